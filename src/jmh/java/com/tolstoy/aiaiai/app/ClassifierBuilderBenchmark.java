@@ -0,0 +1,129 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.File;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierParams;
+import com.tolstoy.aiaiai.api.IPrimitiveClassifierParams;
+
+@State( Scope.Benchmark )
+@Fork( 1 )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+public class ClassifierBuilderBenchmark {
+	private static final int BATCH_SIZE = 1000;
+
+	@Param( { "weka.classifiers.trees.J48", "weka.classifiers.bayes.NaiveBayes", "weka.classifiers.trees.RandomForest" } )
+	public String classifierName;
+
+	@Param( { "weka.filters.unsupervised.attribute.Normalize", "weka.filters.AllFilter" } )
+	public String filterName;
+
+	@Param( { "1000", "20000" } )
+	public int numRows;
+
+	private ClassifierBuilderFactory factory;
+	private File inputFile;
+	private IClassifierBuilder<Double> builder;
+	private Instances instances;
+	private List<IClassifierParams<Double>> boxedParams;
+	private List<IPrimitiveClassifierParams> primitiveParams;
+	private List<IClassifierParams<Double>> batch;
+	private int next;
+
+	@Setup
+	public void setup() throws Exception {
+		factory = new ClassifierBuilderFactory();
+		inputFile = SyntheticDataset.write( numRows, 42 );
+		builder = factory.createClassifierBuilder( classifierName, null, filterName, null, inputFile );
+		instances = DataSource.read( inputFile.getAbsolutePath() );
+
+		boxedParams = new ArrayList<IClassifierParams<Double>>();
+		primitiveParams = new ArrayList<IPrimitiveClassifierParams>();
+
+		for ( Instance instance : instances ) {
+			IClassifierParams<Double> boxed = builder.createClassifierParams();
+			IPrimitiveClassifierParams primitive = builder.createPrimitiveClassifierParams();
+
+			for ( int i = 0; i < instance.numAttributes() - 1; i++ ) {
+				boxed.setValue( instance.attribute( i ).name(), instance.value( i ) );
+				primitive.setValue( primitive.getIndex( instance.attribute( i ).name() ), instance.value( i ) );
+			}
+
+			boxedParams.add( boxed );
+			primitiveParams.add( primitive );
+		}
+
+		batch = boxedParams.subList( 0, Math.min( BATCH_SIZE, boxedParams.size() ) );
+	}
+
+	@Benchmark
+	@BenchmarkMode( Mode.SingleShotTime )
+	@OutputTimeUnit( TimeUnit.MILLISECONDS )
+	@Warmup( iterations = 2 )
+	@Measurement( iterations = 5 )
+	public Object train() throws Exception {
+		return factory.createClassifierBuilder( classifierName, null, filterName, null, inputFile );
+	}
+
+	@Benchmark
+	@BenchmarkMode( Mode.AverageTime )
+	@OutputTimeUnit( TimeUnit.NANOSECONDS )
+	public String classify() throws Exception {
+		return builder.classify( boxedParams.get( nextRow() ) );
+	}
+
+	@Benchmark
+	@BenchmarkMode( Mode.AverageTime )
+	@OutputTimeUnit( TimeUnit.NANOSECONDS )
+	public String classifyPrimitive() throws Exception {
+		return builder.classify( (IClassifierParams) primitiveParams.get( nextRow() ) );
+	}
+
+	@Benchmark
+	@BenchmarkMode( Mode.AverageTime )
+	@OutputTimeUnit( TimeUnit.MICROSECONDS )
+	public List<String> classifyBatch() throws Exception {
+		return builder.classifyBatch( batch );
+	}
+
+	private int nextRow() {
+		if ( ++next >= boxedParams.size() ) {
+			next = 0;
+		}
+
+		return next;
+	}
+}
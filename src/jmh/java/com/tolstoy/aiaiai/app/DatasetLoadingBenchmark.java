@@ -0,0 +1,76 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State( Scope.Benchmark )
+@Fork( 1 )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class DatasetLoadingBenchmark {
+	@Param( { "1000", "20000", "200000" } )
+	public int numRows;
+
+	private File inputFile;
+	private File columnarFile;
+	private ColumnarDatasetStore columnarStore;
+
+	@Setup
+	public void setup() throws Exception {
+		inputFile = SyntheticDataset.write( numRows, 42 );
+
+		columnarFile = File.createTempFile( "aiaiai-bench", ".col" );
+		columnarFile.deleteOnExit();
+
+		columnarStore = new ColumnarDatasetStore();
+		columnarStore.convert( inputFile, columnarFile );
+	}
+
+	@Benchmark
+	public Object loadArff() throws Exception {
+		return new DatasetCache().get( inputFile );
+	}
+
+	@Benchmark
+	public Object loadColumnar() throws Exception {
+		return columnarStore.load( columnarFile );
+	}
+
+	@Benchmark
+	public Object loadKeyedInstanceSet() throws Exception {
+		return new KeyedInstanceSet<String,Double>( inputFile );
+	}
+
+	@Benchmark
+	public Object loadColumnarKeyedInstanceSet() throws Exception {
+		return new ColumnarKeyedInstanceSet( inputFile );
+	}
+}
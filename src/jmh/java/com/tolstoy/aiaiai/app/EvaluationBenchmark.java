@@ -0,0 +1,116 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierParams;
+import com.tolstoy.aiaiai.api.IConfidenceMatrix;
+import com.tolstoy.aiaiai.api.IEvaluationResult;
+import com.tolstoy.aiaiai.api.IEvaluator;
+import com.tolstoy.aiaiai.api.IKeyedInstance;
+
+@State( Scope.Benchmark )
+@Fork( 1 )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+public class EvaluationBenchmark {
+	//	only the evaluator benchmark takes this state, so only it is repeated for each thread count
+	@State( Scope.Benchmark )
+	public static class Pool {
+		@Param( { "1", "2", "4", "8" } )
+		public int numThreads;
+
+		private ExecutorService executor;
+
+		@Setup
+		public void setup() {
+			executor = Executors.newFixedThreadPool( numThreads );
+		}
+
+		@TearDown
+		public void tearDown() {
+			executor.shutdown();
+		}
+	}
+
+	@Param( { "weka.classifiers.trees.J48", "weka.classifiers.bayes.NaiveBayes", "weka.classifiers.trees.RandomForest" } )
+	public String classifierName;
+
+	@Param( { "weka.filters.unsupervised.attribute.Normalize", "weka.filters.AllFilter" } )
+	public String filterName;
+
+	@Param( { "1000", "20000" } )
+	public int numRows;
+
+	private ClassifierBuilderFactory factory;
+	private App app;
+	private File inputFile;
+	private IClassifierBuilder<Double> builder;
+	private IClassifierParams<Double> params;
+	private List<IKeyedInstance<String,Double>> keyedInstances;
+	private Map<String,Integer> numPerClass;
+	private IEvaluator evaluator;
+	private ColumnarKeyedInstanceSet columnarKeyedInstanceSet;
+
+	@Setup
+	public void setup() throws Exception {
+		factory = new ClassifierBuilderFactory();
+		app = new App();
+		inputFile = SyntheticDataset.write( numRows, 42 );
+		builder = factory.createClassifierBuilder( classifierName, null, filterName, null, inputFile );
+		params = builder.createClassifierParams();
+		keyedInstances = new KeyedInstanceSet<String,Double>( inputFile ).getKeyedInstances();
+		numPerClass = app.countNumPerClass( keyedInstances );
+		//	enough chunks to keep eight threads busy on the smaller dataset
+		evaluator = factory.createEvaluator( builder, Math.max( 1, numRows / 64 ) );
+		columnarKeyedInstanceSet = new ColumnarKeyedInstanceSet( inputFile );
+	}
+
+	@Benchmark
+	public IConfidenceMatrix countNumCorrectByClass() throws Exception {
+		IConfidenceMatrix confidenceMatrix = factory.createConfidenceMatrix( numPerClass );
+
+		app.countNumCorrectByClass( builder, params, keyedInstances, confidenceMatrix );
+
+		return confidenceMatrix;
+	}
+
+	@Benchmark
+	public IEvaluationResult evaluator( Pool pool ) throws Exception {
+		return evaluator.evaluate( columnarKeyedInstanceSet, pool.executor );
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.util.Random;
+
+class SyntheticDataset {
+	static final int NUM_ATTRIBUTES = 10;
+	static final String[] CLASSES = { "alpha", "beta", "gamma" };
+
+	static File write( int numRows, long seed ) throws Exception {
+		File file = File.createTempFile( "synthetic-" + numRows + "-", ".arff" );
+		file.deleteOnExit();
+
+		Random random = new Random( seed );
+
+		try ( PrintWriter out = new PrintWriter( new BufferedWriter( new FileWriter( file ) ) ) ) {
+			out.println( "@RELATION synthetic" );
+			for ( int i = 0; i < NUM_ATTRIBUTES; i++ ) {
+				out.println( "@ATTRIBUTE attr" + i + " REAL" );
+			}
+			out.println( "@ATTRIBUTE class {" + String.join( ",", CLASSES ) + "}" );
+			out.println( "@DATA" );
+
+			StringBuilder row = new StringBuilder();
+			for ( int r = 0; r < numRows; r++ ) {
+				int label = random.nextInt( CLASSES.length );
+
+				row.setLength( 0 );
+				for ( int i = 0; i < NUM_ATTRIBUTES; i++ ) {
+					row.append( label * ( i % 3 ) + random.nextGaussian() ).append( ',' );
+				}
+				row.append( CLASSES[ label ] );
+
+				out.println( row );
+			}
+		}
+
+		return file;
+	}
+}
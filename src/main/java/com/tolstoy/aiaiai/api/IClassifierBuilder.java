@@ -14,7 +14,20 @@
 
 package com.tolstoy.aiaiai.api;
 
+import java.util.List;
+
 public interface IClassifierBuilder<V> {
 	IClassifierParams<V> createClassifierParams();
+	IPrimitiveClassifierParams createPrimitiveClassifierParams();
+	ISparseClassifierParams createSparseClassifierParams();
 	String classify( IClassifierParams<V> params ) throws Exception;
+	List<String> classifyBatch( List<IClassifierParams<V>> paramsList ) throws Exception;
+	double[] classifyDistribution( IClassifierParams<V> params ) throws Exception;
+	double[] classifyDistribution( IClassifierParams<V> params, double[] distribution ) throws Exception;
+	double[][] classifyDistributionBatch( List<IClassifierParams<V>> paramsList ) throws Exception;
+	List<String> getClassAttributeOptions();
+	void update( IKeyedInstance<String,V> keyedInstance ) throws Exception;
+	void updateBatch( List<IKeyedInstance<String,V>> keyedInstances ) throws Exception;
+	void flushUpdates() throws Exception;
+	long getModelVersion();
 }
@@ -15,10 +15,30 @@
 package com.tolstoy.aiaiai.api;
 
 import java.io.File;
+import java.net.InetAddress;
 import java.util.List;
 import java.util.Map;
 
 public interface IClassifierBuilderFactory {
 	IClassifierBuilder createClassifierBuilder( String classifierName, List<String> classifierArguments, String filterName, List<String> filterArguments, File inputFile ) throws Exception;
+	IClassifierBuilder createConcurrentClassifierBuilder( String classifierName, List<String> classifierArguments, String filterName, List<String> filterArguments, File inputFile ) throws Exception;
+	IClassifierBuilder createStreamingClassifierBuilder( String classifierName, List<String> classifierArguments, String filterName, List<String> filterArguments, File inputFile ) throws Exception;
+	ICachingClassifierBuilder createCachingClassifierBuilder( IClassifierBuilder builder, int maxEntries, long ttlMillis );
+	IConfidenceMatrix evaluate( IClassifierBuilder builder, File inputFile ) throws Exception;
+	IEvaluator createEvaluator( IClassifierBuilder builder, int chunkSize );
+	ICrossValidator createCrossValidator( String classifierName, List<String> classifierArguments, String filterName, List<String> filterArguments );
+	IParameterSearch createParameterSearch( String classifierName, Map<String,List<String>> classifierSearchSpace, String filterName, Map<String,List<String>> filterSearchSpace );
+	void saveClassifierBuilder( IClassifierBuilder builder, File outputFile ) throws Exception;
+	IClassifierBuilder loadClassifierBuilder( File modelFile ) throws Exception;
+	IClassifierBuilder loadConcurrentClassifierBuilder( File modelFile ) throws Exception;
+	void convertToColumnar( File inputFile, File outputFile ) throws Exception;
+	IKeyedInstanceSet createKeyedInstanceSet( File inputFile ) throws Exception;
+	IColumnarKeyedInstanceSet createColumnarKeyedInstanceSet( File inputFile ) throws Exception;
+	IColumnarKeyedInstanceSet createMappedKeyedInstanceSet( File columnarFile ) throws Exception;
+	IModelRegistry createModelRegistry( long memoryBudgetBytes );
+	IModelRegistry createModelRegistry( long memoryBudgetBytes, int maxCopiesPerModel );
+	IMetrics getMetrics();
+	IScoringServer createScoringServer( IClassifierBuilder builder, int port, int maxBatchSize, long maxWaitMicros );
+	IScoringServer createScoringServer( IClassifierBuilder builder, InetAddress bindAddress, int port, int maxBatchSize, long maxWaitMicros );
 	IConfidenceMatrix createConfidenceMatrix( Map<String,Integer> classCounts );
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.api;
+
+import java.util.List;
+
+/*
+ * A keyed instance set stored by column, with one double per value and one class ordinal per row.
+ * getKeyedInstances() returns lightweight views over the columns. Rows and attributes can also be read
+ * by index, which avoids per-row objects and string keys.
+ */
+public interface IColumnarKeyedInstanceSet<C> extends IKeyedInstanceSet<C,Double> {
+	int getNumRows();
+	List<String> getAttributeNames();
+	int getAttributeIndex( String name );
+	List<C> getClassLabels();
+
+	double getValue( int row, int attribute );
+	int getClassOrdinal( int row );
+	C getExpectedClass( int row );
+	IKeyedInstance<C,Double> getKeyedInstance( int row );
+
+	void copyRow( int row, double[] values );
+	void copyColumn( int attribute, int fromRow, double[] dest, int destPos, int length );
+	void copyClassOrdinals( int fromRow, int[] dest, int destPos, int length );
+}
@@ -19,7 +19,13 @@ import java.util.Map;
 
 public interface IConfidenceMatrix {
 	void addPrediction( String expected, String actual );
+	void addPredictions( String expected, String actual, int count );
+	long getCount( String expected, String actual );
 	List<String> getResults();
 	Map<String,Integer> getClassCounts();
 	Map<String,Integer> getMatrix();
+	double getPrecision( String label );
+	double getRecall( String label );
+	double getF1( String label );
+	double getKappa();
 }
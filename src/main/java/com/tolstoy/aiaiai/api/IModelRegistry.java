@@ -0,0 +1,33 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.api;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+public interface IModelRegistry {
+	void register( String name, File modelFile ) throws Exception;
+	void swap( String name, File modelFile ) throws Exception;
+	void unregister( String name );
+	Set<String> getModelNames();
+	IClassifierBuilder getClassifierBuilder( String name ) throws Exception;
+	String classify( String name, IClassifierParams params ) throws Exception;
+	List<String> classifyBatch( String name, List<IClassifierParams> paramsList ) throws Exception;
+	double[] classifyDistribution( String name, IClassifierParams params ) throws Exception;
+	IModelStats getModelStats( String name );
+	long getMemoryUsed();
+	long getMemoryBudget();
+}
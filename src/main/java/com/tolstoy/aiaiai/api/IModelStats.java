@@ -0,0 +1,29 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.api;
+
+public interface IModelStats {
+	String getName();
+	boolean isLoaded();
+	long getEstimatedBytes();
+	long getNumLoads();
+	long getNumEvictions();
+	long getNumRequests();
+	long getNumErrors();
+	double getMeanLatencyMicros();
+	double getMaxLatencyMicros();
+	IHistogramSnapshot getLatency();
+	double getQps();
+}
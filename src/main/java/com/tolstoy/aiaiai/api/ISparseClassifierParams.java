@@ -0,0 +1,27 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.api;
+
+/*
+ * Holds only the values that were set. Every attribute that is not set counts as 0, so getList never
+ * throws. Memory and classification cost grow with the number of non-zero values, not with the
+ * number of attributes.
+ */
+public interface ISparseClassifierParams extends IClassifierParams<Double> {
+	int getIndex( String key );
+	double getValue( int index );
+	void setValue( int index, double value );
+	int getNumNonZero();
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.tolstoy.aiaiai.api.IColumnarKeyedInstanceSet;
+import com.tolstoy.aiaiai.api.IKeyedInstance;
+
+/*
+ * Shared by the columnar keyed instance sets. Subclasses decide where the columns live. This class
+ * handles the names, the label dictionary and the views. A view is just a row number, so getKeyedInstances()
+ * makes no per-row maps, and every view shares one key set.
+ */
+abstract class AbstractColumnarKeyedInstanceSet implements IColumnarKeyedInstanceSet<String> {
+	private final List<String> attributeNames;
+	private final Map<String,Integer> attributeIndexes;
+	private final Set<String> keys;
+	private final List<String> classLabels;
+	private final Map<String,Integer> classOrdinals;
+
+	AbstractColumnarKeyedInstanceSet( List<String> attributeNames, List<String> classLabels ) {
+		this.attributeNames = Collections.unmodifiableList( attributeNames );
+		this.keys = Collections.unmodifiableSet( new LinkedHashSet<String>( attributeNames ) );
+		this.classLabels = Collections.unmodifiableList( classLabels );
+
+		this.attributeIndexes = new HashMap<String,Integer>();
+		for ( int i = 0; i < attributeNames.size(); i++ ) {
+			attributeIndexes.put( attributeNames.get( i ), i );
+		}
+
+		this.classOrdinals = new HashMap<String,Integer>();
+		for ( int i = 0; i < classLabels.size(); i++ ) {
+			classOrdinals.put( classLabels.get( i ), i );
+		}
+	}
+
+	//	-1 for a missing class
+	public abstract int getClassOrdinal( int row );
+
+	protected abstract void setValue( int row, int attribute, double value );
+	protected abstract void setClassOrdinal( int row, int ordinal );
+
+	public List<IKeyedInstance<String,Double>> getKeyedInstances() {
+		return new Views();
+	}
+
+	public IKeyedInstance<String,Double> getKeyedInstance( int row ) {
+		checkRow( row );
+
+		return new View( row );
+	}
+
+	public List<String> getAttributeNames() {
+		return attributeNames;
+	}
+
+	public int getAttributeIndex( String name ) {
+		Integer ret = attributeIndexes.get( name );
+		if ( ret == null ) {
+			throw new IllegalArgumentException( "Key is not valid: " + name );
+		}
+
+		return ret;
+	}
+
+	public List<String> getClassLabels() {
+		return classLabels;
+	}
+
+	public String getExpectedClass( int row ) {
+		int ordinal = getClassOrdinal( row );
+
+		return ordinal >= 0 ? classLabels.get( ordinal ) : null;
+	}
+
+	public void copyRow( int row, double[] values ) {
+		for ( int attribute = 0; attribute < attributeNames.size(); attribute++ ) {
+			values[ attribute ] = getValue( row, attribute );
+		}
+	}
+
+	public void copyColumn( int attribute, int fromRow, double[] dest, int destPos, int length ) {
+		for ( int i = 0; i < length; i++ ) {
+			dest[ destPos + i ] = getValue( fromRow + i, attribute );
+		}
+	}
+
+	public void copyClassOrdinals( int fromRow, int[] dest, int destPos, int length ) {
+		for ( int i = 0; i < length; i++ ) {
+			dest[ destPos + i ] = getClassOrdinal( fromRow + i );
+		}
+	}
+
+	int getNumAttributes() {
+		return attributeNames.size();
+	}
+
+	protected void checkRow( int row ) {
+		if ( row < 0 || row >= getNumRows() ) {
+			throw new IndexOutOfBoundsException( "Row " + row + " is not in [0," + getNumRows() + ")" );
+		}
+	}
+
+	@Override
+	public String toString() {
+		String ret = getNumRows() + " instances, " + attributeNames.size() + " attributes, classes=" + classLabels + ":\n";
+
+		double[] values = new double[ attributeNames.size() ];
+
+		for ( int row = 0; row < Math.min( getNumRows(), 12 ); row++ ) {
+			copyRow( row, values );
+			ret += getExpectedClass( row ) + " for: " + Arrays.toString( values ) + "\n";
+		}
+
+		if ( getNumRows() > 12 ) {
+			ret += "...\n";
+		}
+
+		return ret;
+	}
+
+	private final class Views extends AbstractList<IKeyedInstance<String,Double>> implements RandomAccess {
+		@Override
+		public IKeyedInstance<String,Double> get( int row ) {
+			return getKeyedInstance( row );
+		}
+
+		@Override
+		public int size() {
+			return getNumRows();
+		}
+	}
+
+	private final class View implements IKeyedInstance<String,Double> {
+		private final int row;
+
+		View( int row ) {
+			this.row = row;
+		}
+
+		public Set<String> getKeys() {
+			return keys;
+		}
+
+		public Double getValue( String key ) {
+			Integer attribute = attributeIndexes.get( key );
+
+			return attribute != null ? AbstractColumnarKeyedInstanceSet.this.getValue( row, attribute ) : null;
+		}
+
+		public void setValue( String key, Double value ) {
+			AbstractColumnarKeyedInstanceSet.this.setValue( row, getAttributeIndex( key ), value != null ? value : Double.NaN );
+		}
+
+		public String getExpectedClass() {
+			return AbstractColumnarKeyedInstanceSet.this.getExpectedClass( row );
+		}
+
+		public void setExpectedClass( String expectedClass ) {
+			if ( expectedClass == null ) {
+				setClassOrdinal( row, -1 );
+				return;
+			}
+
+			Integer ordinal = classOrdinals.get( expectedClass );
+			if ( ordinal == null ) {
+				throw new IllegalArgumentException( "Unknown class: " + expectedClass );
+			}
+
+			setClassOrdinal( row, ordinal );
+		}
+
+		@Override
+		public String toString() {
+			String[] components = new String[ attributeNames.size() ];
+			for ( int attribute = 0; attribute < components.length; attribute++ ) {
+				components[ attribute ] = attributeNames.get( attribute ) + "=" + AbstractColumnarKeyedInstanceSet.this.getValue( row, attribute );
+			}
+
+			return getExpectedClass() + " for: " + StringUtils.join( components, "\t\t" );
+		}
+	}
+}
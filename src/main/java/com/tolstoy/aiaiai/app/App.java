@@ -36,6 +36,9 @@ import com.tolstoy.aiaiai.api.IClassifierParams;
 import com.tolstoy.aiaiai.api.IKeyedInstanceSet;
 import com.tolstoy.aiaiai.api.IKeyedInstance;
 import com.tolstoy.aiaiai.api.IConfidenceMatrix;
+import com.tolstoy.aiaiai.api.IEvaluationResult;
+import com.tolstoy.aiaiai.api.ICrossValidator;
+import com.tolstoy.aiaiai.api.ICrossValidationResult;
 
 public class App {
 	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
@@ -43,6 +46,7 @@ public class App {
 	private static final String CLASSIFIER_NAME = "weka.classifiers.trees.J48";
 	//private static final String FILTER_NAME = "weka.filters.unsupervised.instance.Randomize";
 	private static final String FILTER_NAME = "weka.filters.unsupervised.attribute.Normalize";
+	private static final int EVALUATION_CHUNK_SIZE = 32;
 
 	public App() {
 		try {
@@ -61,31 +65,34 @@ public class App {
 			File inputFile = Paths.get( App.class.getResource( "/iris.arff" ).toURI() ).toFile();
 
 			IClassifierBuilderFactory classifierBuilderFactory = new ClassifierBuilderFactory();
+			classifierBuilderFactory.getMetrics().setEnabled( true );
 
 			IClassifierBuilder builder = classifierBuilderFactory.createClassifierBuilder( CLASSIFIER_NAME, classifierArguments, FILTER_NAME, filterArguments, inputFile );
 
-			IClassifierParams params = builder.createClassifierParams();
+			IKeyedInstanceSet keyedInstanceSet = classifierBuilderFactory.createKeyedInstanceSet( inputFile );
 
-			IKeyedInstanceSet keyedInstanceSet = new KeyedInstanceSet<String,Double>( inputFile );
+			IEvaluationResult evaluationResult = classifierBuilderFactory.createEvaluator( builder, EVALUATION_CHUNK_SIZE ).evaluate( keyedInstanceSet );
 
-			int numMatches = 0;
+			IConfidenceMatrix confidenceMatrix = evaluationResult.getMatrix();
 
-			List<IKeyedInstance<String,Double>> keyedInstances = keyedInstanceSet.getKeyedInstances();
+			logger.info( "RESULTS:\n\t" + StringUtils.join( confidenceMatrix.getResults(), "\n\t" ) );
+			logger.info( "classes=" + confidenceMatrix.getClassCounts() + ", matrix=" + confidenceMatrix.getMatrix() ); 
+			logger.info( "evaluated " + evaluationResult.getNumRows() + " rows at " + String.format( "%.0f", evaluationResult.getRowsPerSecond() ) + " rows/sec" );
 
-			Map<String,Integer> numPerClass = countNumPerClass( keyedInstances );
+			ICrossValidator crossValidator = classifierBuilderFactory.createCrossValidator( CLASSIFIER_NAME, classifierArguments, FILTER_NAME, filterArguments );
 
-			IConfidenceMatrix confidenceMatrix = classifierBuilderFactory.createConfidenceMatrix( numPerClass );
+			ICrossValidationResult crossValidationResult = crossValidator.crossValidate( inputFile, 10, 1, 1, true );
 
-			countNumCorrectByClass( builder, params, keyedInstances, confidenceMatrix );
+			logger.info( "CROSS-VALIDATION RESULTS:\n\t" + StringUtils.join( crossValidationResult.getMergedMatrix().getResults(), "\n\t" ) );
 
-			logger.info( "RESULTS:\n\t" + StringUtils.join( confidenceMatrix.getResults(), "\n\t" ) );
-			logger.info( "classes=" + confidenceMatrix.getClassCounts() + ", matrix=" + confidenceMatrix.getMatrix() ); 
+			logger.info( "METRICS:\n" + classifierBuilderFactory.getMetrics() );
 		}
 		catch ( Exception e ) {
 			logger.catching( e );
 		}
 	}
 
+	//	the sequential loop the evaluator replaced, kept as the baseline for EvaluationBenchmark
 	protected Map<String,Integer> countNumPerClass( List<IKeyedInstance<String,Double>> keyedInstances ) {
 		Map<String,Integer> ret = new HashMap<String,Integer>();
 
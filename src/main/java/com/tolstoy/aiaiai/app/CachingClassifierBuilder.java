@@ -0,0 +1,319 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.lang.invoke.MethodHandles;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.tolstoy.aiaiai.api.ICachingClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierParams;
+import com.tolstoy.aiaiai.api.IPrimitiveClassifierParams;
+import com.tolstoy.aiaiai.api.ISparseClassifierParams;
+import com.tolstoy.aiaiai.api.IKeyedInstance;
+
+/*
+ * Caches predictions keyed on the exact feature vector. The cache is split into independently
+ * locked LRU segments so concurrent callers rarely contend. Each entry records the model version
+ * it was computed with, and the whole cache is dropped as soon as the delegate reports a new version.
+ */
+class CachingClassifierBuilder<V> implements ICachingClassifierBuilder<V> {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private static final int NUM_SEGMENTS = 16;
+
+	private final IClassifierBuilder<V> delegate;
+	private final ClassifierBuilder<V> keyBuilder;
+	private final long ttlNanos;
+	private final Segment[] segments;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+	private final AtomicLong evictions;
+	private volatile long cachedModelVersion;
+
+	/*
+	 * keyBuilder turns params into feature vectors and is only read; ttlMillis of 0 or less means entries never expire.
+	 */
+	CachingClassifierBuilder( IClassifierBuilder<V> delegate, ClassifierBuilder<V> keyBuilder, int maxEntries, long ttlMillis ) {
+		if ( maxEntries < 1 ) {
+			throw new IllegalArgumentException( "Cache size must be positive: " + maxEntries );
+		}
+
+		this.delegate = delegate;
+		this.keyBuilder = keyBuilder;
+		this.ttlNanos = ttlMillis > 0 ? ttlMillis * 1000000 : Long.MAX_VALUE;
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.evictions = new AtomicLong();
+		this.cachedModelVersion = delegate.getModelVersion();
+
+		int numSegments = Math.min( NUM_SEGMENTS, maxEntries );
+		this.segments = new Segment[ numSegments ];
+		for ( int i = 0; i < numSegments; i++ ) {
+			segments[ i ] = new Segment( maxEntries / numSegments + ( i < maxEntries % numSegments ? 1 : 0 ), evictions );
+		}
+	}
+
+	public IClassifierParams<V> createClassifierParams() {
+		return delegate.createClassifierParams();
+	}
+
+	public IPrimitiveClassifierParams createPrimitiveClassifierParams() {
+		return delegate.createPrimitiveClassifierParams();
+	}
+
+	public ISparseClassifierParams createSparseClassifierParams() {
+		return delegate.createSparseClassifierParams();
+	}
+
+	public String classify( IClassifierParams<V> params ) throws Exception {
+		long modelVersion = checkModelVersion();
+
+		Key key = new Key( keyBuilder.createFeatureVector( params ) );
+
+		String ret = lookup( key, modelVersion );
+		if ( ret != null ) {
+			return ret;
+		}
+
+		ret = delegate.classify( params );
+
+		store( key, ret, modelVersion );
+
+		return ret;
+	}
+
+	public List<String> classifyBatch( List<IClassifierParams<V>> paramsList ) throws Exception {
+		long modelVersion = checkModelVersion();
+
+		List<String> ret = new ArrayList<String>( paramsList.size() );
+		List<Key> missedKeys = new ArrayList<Key>();
+		List<Integer> missedPositions = new ArrayList<Integer>();
+		List<IClassifierParams<V>> missedParams = new ArrayList<IClassifierParams<V>>();
+
+		for ( IClassifierParams<V> params : paramsList ) {
+			Key key = new Key( keyBuilder.createFeatureVector( params ) );
+
+			String prediction = lookup( key, modelVersion );
+			if ( prediction == null ) {
+				missedKeys.add( key );
+				missedPositions.add( ret.size() );
+				missedParams.add( params );
+			}
+
+			ret.add( prediction );
+		}
+
+		if ( !missedParams.isEmpty() ) {
+			List<String> predictions = delegate.classifyBatch( missedParams );
+
+			for ( int i = 0; i < predictions.size(); i++ ) {
+				ret.set( missedPositions.get( i ), predictions.get( i ) );
+				store( missedKeys.get( i ), predictions.get( i ), modelVersion );
+			}
+		}
+
+		return ret;
+	}
+
+	//	only labels are cached, distributions always go to the delegate
+	public double[] classifyDistribution( IClassifierParams<V> params ) throws Exception {
+		return delegate.classifyDistribution( params );
+	}
+
+	public double[] classifyDistribution( IClassifierParams<V> params, double[] distribution ) throws Exception {
+		return delegate.classifyDistribution( params, distribution );
+	}
+
+	public double[][] classifyDistributionBatch( List<IClassifierParams<V>> paramsList ) throws Exception {
+		return delegate.classifyDistributionBatch( paramsList );
+	}
+
+	public List<String> getClassAttributeOptions() {
+		return delegate.getClassAttributeOptions();
+	}
+
+	public void update( IKeyedInstance<String,V> keyedInstance ) throws Exception {
+		delegate.update( keyedInstance );
+		checkModelVersion();
+	}
+
+	public void updateBatch( List<IKeyedInstance<String,V>> keyedInstances ) throws Exception {
+		delegate.updateBatch( keyedInstances );
+		checkModelVersion();
+	}
+
+	public void flushUpdates() throws Exception {
+		delegate.flushUpdates();
+		checkModelVersion();
+	}
+
+	public long getModelVersion() {
+		return delegate.getModelVersion();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public double getHitRate() {
+		long numHits = hits.get();
+		long total = numHits + misses.get();
+
+		return total > 0 ? (double) numHits / total : 0;
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public int size() {
+		int ret = 0;
+		for ( Segment segment : segments ) {
+			synchronized ( segment ) {
+				ret += segment.size();
+			}
+		}
+
+		return ret;
+	}
+
+	public void clear() {
+		for ( Segment segment : segments ) {
+			synchronized ( segment ) {
+				segment.clear();
+			}
+		}
+	}
+
+	IClassifierBuilder<V> getDelegate() {
+		return delegate;
+	}
+
+	protected long checkModelVersion() {
+		long ret = delegate.getModelVersion();
+		if ( ret != cachedModelVersion ) {
+			cachedModelVersion = ret;
+			clear();
+			logger.debug( "cleared prediction cache for model version " + ret );
+		}
+
+		return ret;
+	}
+
+	protected String lookup( Key key, long modelVersion ) {
+		Segment segment = segmentFor( key );
+		Entry entry;
+
+		synchronized ( segment ) {
+			entry = segment.get( key );
+			if ( entry != null && ( entry.modelVersion != modelVersion || System.nanoTime() - entry.createdNanos > ttlNanos ) ) {
+				segment.remove( key );
+				entry = null;
+			}
+		}
+
+		if ( entry == null ) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		hits.incrementAndGet();
+
+		return entry.prediction;
+	}
+
+	protected void store( Key key, String prediction, long modelVersion ) {
+		Segment segment = segmentFor( key );
+
+		synchronized ( segment ) {
+			segment.put( key, new Entry( prediction, modelVersion, System.nanoTime() ) );
+		}
+	}
+
+	private Segment segmentFor( Key key ) {
+		return segments[ ( key.hash & 0x7fffffff ) % segments.length ];
+	}
+
+	@Override
+	public String toString() {
+		return "entries=" + size() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+	}
+
+	private static final class Key {
+		private final double[] values;
+		private final int hash;
+
+		Key( double[] values ) {
+			this.values = values;
+			this.hash = Arrays.hashCode( values );
+		}
+
+		@Override
+		public boolean equals( Object obj ) {
+			return obj instanceof Key && hash == ( (Key) obj ).hash && Arrays.equals( values, ( (Key) obj ).values );
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static final class Entry {
+		private final String prediction;
+		private final long modelVersion;
+		private final long createdNanos;
+
+		Entry( String prediction, long modelVersion, long createdNanos ) {
+			this.prediction = prediction;
+			this.modelVersion = modelVersion;
+			this.createdNanos = createdNanos;
+		}
+	}
+
+	private static final class Segment extends LinkedHashMap<Key,Entry> {
+		private final int maxEntries;
+		private final AtomicLong evictions;
+
+		Segment( int maxEntries, AtomicLong evictions ) {
+			super( 16, 0.75f, true );
+			this.maxEntries = maxEntries;
+			this.evictions = evictions;
+		}
+
+		@Override
+		protected boolean removeEldestEntry( Map.Entry<Key,Entry> eldest ) {
+			if ( size() > maxEntries ) {
+				evictions.incrementAndGet();
+				return true;
+			}
+
+			return false;
+		}
+	}
+}
@@ -14,22 +14,24 @@
 
 package com.tolstoy.aiaiai.app;
 
-import java.io.File;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Enumeration;
-import java.io.FileReader;
-import java.io.BufferedReader;
+import java.util.Collections;
+import java.util.Map;
+import java.util.HashMap;
 import java.lang.invoke.MethodHandles;
 
 import weka.classifiers.Classifier;
 import weka.classifiers.AbstractClassifier;
 import weka.classifiers.Evaluation;
+import weka.classifiers.UpdateableClassifier;
 import weka.core.Attribute;
+import weka.core.BatchPredictor;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.DenseInstance;
-import weka.core.OptionHandler;
+import weka.core.SparseInstance;
 import weka.core.Utils;
 import weka.filters.Filter;
 import org.apache.logging.log4j.LogManager;
@@ -38,45 +40,58 @@ import org.apache.logging.log4j.Logger;
 import com.tolstoy.aiaiai.api.IClassifierBuilderFactory;
 import com.tolstoy.aiaiai.api.IClassifierBuilder;
 import com.tolstoy.aiaiai.api.IClassifierParams;
+import com.tolstoy.aiaiai.api.IPrimitiveClassifierParams;
+import com.tolstoy.aiaiai.api.ISparseClassifierParams;
+import com.tolstoy.aiaiai.api.IKeyedInstance;
 import com.tolstoy.aiaiai.api.AttributeNotSetException;
+import com.tolstoy.aiaiai.api.ClassifierNotUpdateableException;
 
 class ClassifierBuilder<V> implements IClassifierBuilder<V> {
 	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
 
-	private final Classifier classifier;
+	static final int UPDATES_PER_PUBLISH = 100;
+
 	private final Filter filter;
+	private final Filter updateFilter;
 	private final List<Attribute> valueAttributes;
 	private final List<String> classAttributeOptions;
 	private final Attribute classAttribute;
 	private final int maxAttributeIndex;
+	private final Instances structure;
+	private final Instances header;
+	private final Map<String,Integer> valueAttributeIndexes;
+	private final String[] valueAttributeNames;
+	private final int[] valueAttributePositions;
+	private final CompiledFilter compiledFilter;
+	private final Metrics metrics;
+	private volatile Classifier classifier;
+	private volatile long modelVersion;
+	private EnsembleTrainingMetrics trainingMetrics;
+	private boolean filterInUse;
+	private Classifier workingClassifier;
+	private int numPendingUpdates;
 
-	ClassifierBuilder( String classifierName, List<String> classifierArguments, String filterName, List<String> filterArguments, File inputFile ) throws Exception {
-		String args[];
-
-		args = classifierArguments != null ? classifierArguments.toArray( new String[ 0 ] ) : null;
-		this.classifier = AbstractClassifier.forName( classifierName, args );
+	ClassifierBuilder( Classifier classifier, Filter filter, Instances structure, Metrics metrics ) throws Exception {
+		this( classifier, filter, structure, 0, metrics );
+	}
 
-		args = filterArguments != null ? filterArguments.toArray( new String[ 0 ] ) : null;
-		this.filter = (Filter) Class.forName( filterName ).getDeclaredConstructor().newInstance();
-		if ( args != null && ( this.filter instanceof OptionHandler ) ) {
-			( (OptionHandler) this.filter ).setOptions( args );
-		}
+	ClassifierBuilder( Classifier classifier, Filter filter, Instances structure, long modelVersion, Metrics metrics ) throws Exception {
+		long start = metrics.start();
 
-		Instances rawInstances = new Instances( new BufferedReader( new FileReader( inputFile ) ) );
+		this.metrics = metrics;
+		this.classifier = classifier;
+		this.filter = filter;
+		this.updateFilter = classifier instanceof UpdateableClassifier ? Filter.makeCopy( filter ) : null;
+		this.modelVersion = modelVersion;
+		this.structure = new Instances( structure, 0 );
 
-		InstancesHelper helper = new InstancesHelper( rawInstances );
+		InstancesHelper helper = new InstancesHelper( this.structure );
 
 		this.classAttribute = helper.getClassAttribute();
 		this.classAttributeOptions = helper.getClassAttributeOptions();
 		this.valueAttributes = helper.getValueAttributes();
 
-		rawInstances.setClassIndex( this.classAttribute.index() );
-
-		this.filter.setInputFormat( rawInstances );
-
-		Instances filteredInstances = Filter.useFilter( rawInstances, this.filter );
-
-		this.classifier.buildClassifier( filteredInstances );
+		this.structure.setClassIndex( this.classAttribute.index() );
 
 		int tempMax = classAttribute.index();
 		for ( Attribute attr : valueAttributes ) {
@@ -84,52 +99,563 @@ class ClassifierBuilder<V> implements IClassifierBuilder<V> {
 		}
 
 		this.maxAttributeIndex = tempMax;
+
+		this.header = createHeader();
+
+		this.compiledFilter = CompiledFilter.compile( filter, this.structure );
+
+		this.valueAttributeIndexes = new HashMap<String,Integer>();
+		this.valueAttributeNames = new String[ valueAttributes.size() ];
+		this.valueAttributePositions = new int[ valueAttributes.size() ];
+		for ( int i = 0; i < valueAttributes.size(); i++ ) {
+			Attribute attr = valueAttributes.get( i );
+			this.valueAttributeIndexes.put( attr.name(), i );
+			this.valueAttributeNames[ i ] = attr.name();
+			this.valueAttributePositions[ i ] = attr.index();
+		}
+
+		metrics.record( Metrics.Stage.BUILDER_CREATE, start );
+	}
+
+	synchronized ClassifierBuilder<V> copy() throws Exception {
+		return new ClassifierBuilder<V>( AbstractClassifier.makeCopy( classifier ), Filter.makeCopy( filter ), structure, modelVersion, metrics );
+	}
+
+	Classifier getClassifier() {
+		return classifier;
+	}
+
+	Filter getFilter() {
+		return filter;
+	}
+
+	CompiledFilter getCompiledFilter() {
+		return compiledFilter;
+	}
+
+	//	null unless this builder trained an ensemble
+	EnsembleTrainingMetrics getTrainingMetrics() {
+		return trainingMetrics;
+	}
+
+	void setTrainingMetrics( EnsembleTrainingMetrics trainingMetrics ) {
+		this.trainingMetrics = trainingMetrics;
+	}
+
+	//	true if a row or batch went into the Weka filter and never came out, leaving it mid-batch
+	boolean isFilterInUse() {
+		return filterInUse;
+	}
+
+	Instances getStructure() {
+		return structure;
 	}
 
 	public IClassifierParams createClassifierParams() {
 		return new ClassifierParams( classAttribute, valueAttributes );
 	}
 
+	public IPrimitiveClassifierParams createPrimitiveClassifierParams() {
+		return new PrimitiveClassifierParams( valueAttributeIndexes, valueAttributeNames, valueAttributePositions );
+	}
+
+	public ISparseClassifierParams createSparseClassifierParams() {
+		return new SparseClassifierParams( valueAttributeIndexes, valueAttributeNames, valueAttributePositions );
+	}
+
+	public long getModelVersion() {
+		return modelVersion;
+	}
+
+	public List<String> getClassAttributeOptions() {
+		return Collections.unmodifiableList( classAttributeOptions );
+	}
+
 	public String classify( IClassifierParams<V> params ) throws Exception {
-		List<V> values = params.getList();
+		long start = metrics.start();
 
-		List<Attribute> attrs = new ArrayList<Attribute>( maxAttributeIndex );
-		for ( int i = 0; i <= maxAttributeIndex; i++ ) {
-			attrs.add( i, null );
+		Instance instance = filterInstance( params );
+
+		long modelStart = metrics.start();
+		double rawPrediction = classifier.classifyInstance( instance );
+		metrics.record( Metrics.Stage.CLASSIFY_MODEL, modelStart );
+
+		String prediction = header.classAttribute().value( (int) rawPrediction );
+
+		metrics.record( Metrics.Stage.CLASSIFY_TOTAL, start );
+		metrics.increment( Metrics.Counter.CLASSIFY_ROWS );
+
+		return prediction;
+	}
+
+	//	entries line up with getClassAttributeOptions()
+	public double[] classifyDistribution( IClassifierParams<V> params ) throws Exception {
+		long start = metrics.start();
+
+		Instance instance = filterInstance( params );
+
+		long modelStart = metrics.start();
+		double[] ret = classifier.distributionForInstance( instance );
+		metrics.record( Metrics.Stage.CLASSIFY_MODEL, modelStart );
+
+		metrics.record( Metrics.Stage.CLASSIFY_TOTAL, start );
+		metrics.increment( Metrics.Counter.CLASSIFY_ROWS );
+
+		return ret;
+	}
+
+	//	a copy-out convenience, not an allocation saving: Weka's distributionForInstance always returns a new array, which is copied into the caller's
+	public double[] classifyDistribution( IClassifierParams<V> params, double[] distribution ) throws Exception {
+		if ( distribution.length != classAttributeOptions.size() ) {
+			throw new IllegalArgumentException( "Distribution array has " + distribution.length + " entries but there are " + classAttributeOptions.size() + " classes" );
 		}
 
-		for ( Attribute attr : valueAttributes ) {
-			attrs.set( attr.index(), new Attribute( attr.name() ) );
+		double[] ret = classifyDistribution( params );
+		System.arraycopy( ret, 0, distribution, 0, distribution.length );
+
+		return distribution;
+	}
+
+	public double[][] classifyDistributionBatch( List<IClassifierParams<V>> paramsList ) throws Exception {
+		long start = metrics.start();
+
+		Instances filteredInstances = filterBatch( paramsList );
+
+		long modelStart = metrics.start();
+
+		Classifier classifier = this.classifier;
+
+		double[][] ret;
+
+		if ( classifier instanceof BatchPredictor && ( (BatchPredictor) classifier ).implementsMoreEfficientBatchPrediction() ) {
+			ret = ( (BatchPredictor) classifier ).distributionsForInstances( filteredInstances );
+		}
+		else {
+			ret = new double[ filteredInstances.numInstances() ][];
+			for ( int i = 0; i < ret.length; i++ ) {
+				ret[ i ] = classifier.distributionForInstance( filteredInstances.instance( i ) );
+			}
 		}
 
-		attrs.set( classAttribute.index(), new Attribute( classAttribute.name(), classAttributeOptions ) );
+		metrics.record( Metrics.Stage.BATCH_MODEL, modelStart );
+		metrics.record( Metrics.Stage.BATCH_TOTAL, start );
+		metrics.add( Metrics.Counter.CLASSIFY_ROWS, ret.length );
+
+		return ret;
+	}
 
-		Instances instances = new Instances( "whatever", (ArrayList<Attribute>) attrs, 0 );
+	public List<String> classifyBatch( List<IClassifierParams<V>> paramsList ) throws Exception {
+		long start = metrics.start();
 
-		double[] attrValuesArray = new double[ values.size() ];
-		int i = 0;
-		for ( V val : values ) {
-			double casted;
-			try {
-				casted = Double.parseDouble( "" + val );
+		Instances filteredInstances = filterBatch( paramsList );
+
+		long modelStart = metrics.start();
+
+		List<String> ret = new ArrayList<String>( filteredInstances.numInstances() );
+
+		Classifier classifier = this.classifier;
+
+		if ( classifier instanceof BatchPredictor && ( (BatchPredictor) classifier ).implementsMoreEfficientBatchPrediction() ) {
+			double[][] distributions = ( (BatchPredictor) classifier ).distributionsForInstances( filteredInstances );
+			for ( double[] distribution : distributions ) {
+				ret.add( header.classAttribute().value( Utils.maxIndex( distribution ) ) );
 			}
-			catch ( Exception e ) {
-				casted = 0;
+		}
+		else {
+			for ( Instance filteredInstance : filteredInstances ) {
+				double rawPrediction = classifier.classifyInstance( filteredInstance );
+				ret.add( header.classAttribute().value( (int) rawPrediction ) );
 			}
-			attrValuesArray[ i++ ] = casted;
 		}
 
+		metrics.record( Metrics.Stage.BATCH_MODEL, modelStart );
+		metrics.record( Metrics.Stage.BATCH_TOTAL, start );
+		metrics.add( Metrics.Counter.CLASSIFY_ROWS, ret.size() );
+
+		return ret;
+	}
+
+	/*
+	 * Single-row updates train a private working copy of the classifier in place. It is published every
+	 * UPDATES_PER_PUBLISH rows, or by flushUpdates(), so the model is copied once per publish instead of
+	 * once per row, and classify never sees a half-updated model. Until then classify uses the last published model.
+	 */
+	public synchronized void update( IKeyedInstance<String,V> keyedInstance ) throws Exception {
+		checkUpdateable();
+
+		long start = metrics.start();
+
+		Instance instance = createInstance( keyedInstance );
+
+		updateWorkingClassifier( instance );
+
+		if ( ++numPendingUpdates >= UPDATES_PER_PUBLISH ) {
+			publishWorkingClassifier();
+		}
+
+		metrics.record( Metrics.Stage.UPDATE, start );
+	}
+
+	//	publishes the batch along with any pending single-row updates
+	public synchronized void updateBatch( List<IKeyedInstance<String,V>> keyedInstances ) throws Exception {
+		checkUpdateable();
+
+		long start = metrics.start();
+
+		List<Instance> instances = new ArrayList<Instance>( keyedInstances.size() );
+		for ( IKeyedInstance<String,V> keyedInstance : keyedInstances ) {
+			instances.add( createInstance( keyedInstance ) );
+		}
+
+		for ( Instance instance : instances ) {
+			updateWorkingClassifier( instance );
+		}
+
+		numPendingUpdates += instances.size();
+
+		publishWorkingClassifier();
+
+		metrics.record( Metrics.Stage.UPDATE, start );
+
+		logger.debug( "updated model with " + keyedInstances.size() + " instances, version=" + modelVersion );
+	}
+
+	public synchronized void flushUpdates() throws Exception {
+		if ( numPendingUpdates > 0 ) {
+			publishWorkingClassifier();
+		}
+	}
+
+	private void checkUpdateable() throws ClassifierNotUpdateableException {
+		if ( updateFilter == null ) {
+			throw new ClassifierNotUpdateableException( classifier.getClass().getName() + " does not implement " + UpdateableClassifier.class.getName() );
+		}
+	}
+
+	//	a failure may leave the working copy half-updated, so it is dropped along with its unpublished updates
+	private void updateWorkingClassifier( Instance instance ) throws Exception {
+		if ( workingClassifier == null ) {
+			workingClassifier = AbstractClassifier.makeCopy( classifier );
+		}
+
+		try {
+			updateFilter.input( instance );
+			updateFilter.batchFinished();
+
+			( (UpdateableClassifier) workingClassifier ).updateClassifier( updateFilter.output() );
+		}
+		catch ( Exception e ) {
+			logger.warn( "update failed, dropping " + numPendingUpdates + " unpublished updates" );
+			workingClassifier = null;
+			numPendingUpdates = 0;
+			throw e;
+		}
+	}
+
+	private void publishWorkingClassifier() throws Exception {
+		if ( workingClassifier == null ) {
+			workingClassifier = AbstractClassifier.makeCopy( classifier );
+		}
+
+		classifier = workingClassifier;
+		workingClassifier = null;
+		numPendingUpdates = 0;
+		modelVersion++;
+	}
+
+	protected Instance filterInstance( IClassifierParams<V> params ) throws Exception {
+		if ( params instanceof SparseClassifierParams ) {
+			return filterSparseInstance( (SparseClassifierParams) params );
+		}
+
+		long start = metrics.start();
+
+		double[] values = createFeatureVector( params );
+
+		metrics.record( Metrics.Stage.CLASSIFY_VECTOR, start );
+		start = metrics.start();
+
+		Instance ret;
+
+		if ( compiledFilter != null ) {
+			ret = new DenseInstance( 1.0, compiledFilter.apply( values ) );
+			ret.setDataset( compiledFilter.getOutputFormat() );
+		}
+		else {
+			Instance instance = new DenseInstance( 1.0, values );
+			instance.setDataset( header );
+
+			filterInUse = true;
+
+			filter.input( instance );
+			filter.batchFinished();
+
+			ret = filter.output();
+
+			filterInUse = false;
+		}
+
+		metrics.record( Metrics.Stage.CLASSIFY_FILTER, start );
+
+		return ret;
+	}
+
+	/*
+	 * Sparse rows skip the compiled filter, which works on dense arrays. With AllFilter they go straight
+	 * to the classifier. Otherwise the Weka filter handles them, the same way it handled sparse training data.
+	 */
+	protected Instance filterSparseInstance( SparseClassifierParams params ) throws Exception {
+		long start = metrics.start();
+
+		Instance instance = createSparseInstance( params );
+
+		metrics.record( Metrics.Stage.CLASSIFY_VECTOR, start );
+		start = metrics.start();
+
+		Instance ret;
+
+		if ( compiledFilter != null && compiledFilter.isIdentity() ) {
+			instance.setDataset( compiledFilter.getOutputFormat() );
+			ret = instance;
+		}
+		else {
+			instance.setDataset( header );
+
+			filterInUse = true;
+
+			filter.input( instance );
+			filter.batchFinished();
+
+			ret = filter.output();
+
+			filterInUse = false;
+		}
+
+		metrics.record( Metrics.Stage.CLASSIFY_FILTER, start );
+
+		return ret;
+	}
+
+	protected Instances filterBatch( List<IClassifierParams<V>> paramsList ) throws Exception {
+		long start = metrics.start();
+
+		Instances ret = filterBatchInstances( paramsList );
+
+		metrics.record( Metrics.Stage.BATCH_FILTER, start );
+
+		return ret;
+	}
+
+	private Instances filterBatchInstances( List<IClassifierParams<V>> paramsList ) throws Exception {
+		if ( compiledFilter != null && ( compiledFilter.isIdentity() || !containsSparse( paramsList ) ) ) {
+			Instances ret = new Instances( compiledFilter.getOutputFormat(), paramsList.size() );
+
+			for ( IClassifierParams<V> params : paramsList ) {
+				if ( params instanceof SparseClassifierParams ) {
+					ret.add( createSparseInstance( (SparseClassifierParams) params ) );
+				}
+				else {
+					ret.add( new DenseInstance( 1.0, compiledFilter.apply( createFeatureVector( params ) ) ) );
+				}
+			}
+
+			return ret;
+		}
+
+		Instances instances = new Instances( header, paramsList.size() );
+
+		for ( IClassifierParams<V> params : paramsList ) {
+			instances.add( createInstance( params ) );
+		}
+
+		filterInUse = true;
+
+		Instances ret = Filter.useFilter( instances, filter );
+
+		filterInUse = false;
+
+		if ( ret.numInstances() != instances.numInstances() ) {
+			throw new IllegalStateException( "Filter changed the number of instances from " + instances.numInstances() + " to " + ret.numInstances() );
+		}
+
+		return ret;
+	}
+
+	protected Instance createInstance( IKeyedInstance<String,V> keyedInstance ) throws Exception {
+		if ( keyedInstance instanceof SparseKeyedInstance ) {
+			return createSparseInstance( (SparseKeyedInstance<String,V>) keyedInstance );
+		}
+
+		double[] attrValuesArray = new double[ maxAttributeIndex + 1 ];
+
+		for ( Attribute attr : valueAttributes ) {
+			V val = keyedInstance.getValue( attr.name() );
+			if ( val == null ) {
+				metrics.increment( Metrics.Counter.ATTRIBUTE_NOT_SET );
+				throw new AttributeNotSetException( attr.name() );
+			}
+
+			attrValuesArray[ attr.index() ] = toDouble( val );
+		}
+
+		int classValue = header.classAttribute().indexOfValue( keyedInstance.getExpectedClass() );
+		if ( classValue < 0 ) {
+			throw new IllegalArgumentException( "Unknown class: " + keyedInstance.getExpectedClass() );
+		}
+
+		attrValuesArray[ classAttribute.index() ] = classValue;
+
 		Instance instance = new DenseInstance( 1.0, attrValuesArray );
-		instances.add( instance );
-		instance.setDataset( instances );
-		instances.setClassIndex( classAttribute.index() );
+		instance.setDataset( header );
 
-		Instances filteredInstances = Filter.useFilter( instances, filter );
+		return instance;
+	}
 
-		double rawPrediction = classifier.classifyInstance( filteredInstances.get( 0 ) );
+	protected Instance createInstance( IClassifierParams<V> params ) throws Exception {
+		Instance instance = params instanceof SparseClassifierParams ? createSparseInstance( (SparseClassifierParams) params ) : new DenseInstance( 1.0, createFeatureVector( params ) );
+		instance.setDataset( header );
 
-		String prediction = instances.classAttribute().value( (int) rawPrediction );
+		return instance;
+	}
 
-		return prediction;
+	//	only the non-zero values and the missing class are stored, so the cost does not depend on the schema width
+	protected Instance createSparseInstance( SparseClassifierParams params ) {
+		params.compact();
+
+		int classIndex = classAttribute.index();
+		int size = params.size();
+
+		int numNonZero = 0;
+		for ( int i = 0; i < size; i++ ) {
+			if ( params.getValueAt( i ) != 0 ) {
+				numNonZero++;
+			}
+		}
+
+		double[] values = new double[ numNonZero + 1 ];
+		int[] indices = new int[ numNonZero + 1 ];
+		int count = 0;
+		boolean classAdded = false;
+
+		for ( int i = 0; i < size; i++ ) {
+			double value = params.getValueAt( i );
+			if ( value == 0 ) {
+				continue;
+			}
+
+			int attributeIndex = params.getAttributeIndex( i );
+			if ( !classAdded && classIndex < attributeIndex ) {
+				values[ count ] = Utils.missingValue();
+				indices[ count++ ] = classIndex;
+				classAdded = true;
+			}
+
+			values[ count ] = value;
+			indices[ count++ ] = attributeIndex;
+		}
+
+		if ( !classAdded ) {
+			values[ count ] = Utils.missingValue();
+			indices[ count ] = classIndex;
+		}
+
+		return new SparseInstance( 1.0, values, indices, maxAttributeIndex + 1 );
+	}
+
+	protected Instance createSparseInstance( SparseKeyedInstance<String,V> keyedInstance ) throws Exception {
+		SparseClassifierParams params = (SparseClassifierParams) createSparseClassifierParams();
+
+		for ( String key : keyedInstance.getKeys() ) {
+			params.setValue( params.getIndex( key ), toDouble( keyedInstance.getValue( key ) ) );
+		}
+
+		int classValue = header.classAttribute().indexOfValue( keyedInstance.getExpectedClass() );
+		if ( classValue < 0 ) {
+			throw new IllegalArgumentException( "Unknown class: " + keyedInstance.getExpectedClass() );
+		}
+
+		Instance instance = createSparseInstance( params );
+		instance.setDataset( header );
+		instance.setClassValue( classValue );
+
+		return instance;
+	}
+
+	protected static boolean containsSparse( List<? extends IClassifierParams> paramsList ) {
+		for ( IClassifierParams params : paramsList ) {
+			if ( params instanceof SparseClassifierParams ) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	//	attribute values in header order with the class slot missing; only reads immutable state, so any thread may call it
+	double[] createFeatureVector( IClassifierParams<V> params ) throws Exception {
+		double[] attrValuesArray = new double[ maxAttributeIndex + 1 ];
+
+		try {
+			if ( params instanceof PrimitiveClassifierParams ) {
+				( (PrimitiveClassifierParams) params ).copyValues( attrValuesArray );
+			}
+			else if ( params instanceof SparseClassifierParams ) {
+				( (SparseClassifierParams) params ).copyValues( attrValuesArray );
+			}
+			else {
+				List<V> values = params.getList();
+				int classIndex = classAttribute.index();
+
+				//	getList() leaves null in the class slot when the class is not last, and that is not a parse failure
+				int i = 0;
+				for ( V val : values ) {
+					if ( i != classIndex ) {
+						attrValuesArray[ i ] = toDouble( val );
+					}
+					i++;
+				}
+			}
+		}
+		catch ( AttributeNotSetException e ) {
+			metrics.increment( Metrics.Counter.ATTRIBUTE_NOT_SET );
+			throw e;
+		}
+
+		attrValuesArray[ classAttribute.index() ] = Utils.missingValue();
+
+		return attrValuesArray;
+	}
+
+	//	Floats still go through their decimal string, so 1.1f is read as 1.1 as it was before Numbers were converted directly
+	protected double toDouble( V val ) {
+		if ( val instanceof Number && !( val instanceof Float ) ) {
+			return ( (Number) val ).doubleValue();
+		}
+
+		try {
+			return Double.parseDouble( "" + val );
+		}
+		catch ( Exception e ) {
+			metrics.increment( Metrics.Counter.VALUE_PARSE_FAILURES );
+			return 0;
+		}
+	}
+
+	protected Instances createHeader() {
+		List<Attribute> attrs = new ArrayList<Attribute>( maxAttributeIndex + 1 );
+		for ( int i = 0; i <= maxAttributeIndex; i++ ) {
+			attrs.add( i, null );
+		}
+
+		for ( Attribute attr : valueAttributes ) {
+			attrs.set( attr.index(), new Attribute( attr.name() ) );
+		}
+
+		attrs.set( classAttribute.index(), new Attribute( classAttribute.name(), classAttributeOptions ) );
+
+		Instances ret = new Instances( "whatever", (ArrayList<Attribute>) attrs, 0 );
+		ret.setClassIndex( classAttribute.index() );
+
+		return ret;
 	}
 }
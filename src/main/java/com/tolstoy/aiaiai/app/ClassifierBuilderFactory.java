@@ -14,26 +14,452 @@
 
 package com.tolstoy.aiaiai.app;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
+import java.net.InetAddress;
 import java.util.List;
 import java.util.Map;
+import java.util.HashMap;
 import java.lang.invoke.MethodHandles;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
 
+import weka.classifiers.Classifier;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.IteratedSingleClassifierEnhancer;
+import weka.classifiers.MultipleClassifiersCombiner;
+import weka.classifiers.ParallelIteratedSingleClassifierEnhancer;
+import weka.classifiers.ParallelMultipleClassifiersCombiner;
+import weka.classifiers.UpdateableClassifier;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.OptionHandler;
+import weka.core.converters.ArffLoader;
+import weka.core.converters.ConverterUtils.DataSource;
+import weka.filters.AllFilter;
+import weka.filters.Filter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.tolstoy.aiaiai.api.IClassifierBuilder;
 import com.tolstoy.aiaiai.api.IClassifierBuilderFactory;
+import com.tolstoy.aiaiai.api.ICachingClassifierBuilder;
 import com.tolstoy.aiaiai.api.IConfidenceMatrix;
+import com.tolstoy.aiaiai.api.IKeyedInstanceSet;
+import com.tolstoy.aiaiai.api.IColumnarKeyedInstanceSet;
+import com.tolstoy.aiaiai.api.IMetrics;
+import com.tolstoy.aiaiai.api.IModelRegistry;
+import com.tolstoy.aiaiai.api.IScoringServer;
+import com.tolstoy.aiaiai.api.ICrossValidator;
+import com.tolstoy.aiaiai.api.IEvaluator;
+import com.tolstoy.aiaiai.api.IParameterSearch;
+import com.tolstoy.aiaiai.api.ClassifierNotUpdateableException;
 
 public class ClassifierBuilderFactory implements IClassifierBuilderFactory {
 	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
 
+	private final ClassifierModelStore modelStore;
+	private final DatasetCache datasetCache;
+	private final ColumnarDatasetStore columnarStore;
+	private final Metrics metrics;
+	private final int numTrainingSlots;
+
+	public ClassifierBuilderFactory() {
+		this( Runtime.getRuntime().availableProcessors() );
+	}
+
+	/*
+	 * numTrainingSlots is how many ensemble members (Bagging, RandomForest, RandomCommittee, Stacking and
+	 * the other Weka parallel ensembles) are trained at once. Passing "-num-slots" in the classifier
+	 * arguments overrides it for that classifier.
+	 */
+	public ClassifierBuilderFactory( int numTrainingSlots ) {
+		this( new DatasetCache(), numTrainingSlots );
+	}
+
+	ClassifierBuilderFactory( DatasetCache datasetCache ) {
+		this( datasetCache, Runtime.getRuntime().availableProcessors() );
+	}
+
+	ClassifierBuilderFactory( DatasetCache datasetCache, int numTrainingSlots ) {
+		if ( numTrainingSlots < 1 ) {
+			throw new IllegalArgumentException( "numTrainingSlots must be at least 1 but is " + numTrainingSlots );
+		}
+
+		this.modelStore = new ClassifierModelStore();
+		this.datasetCache = datasetCache;
+		this.columnarStore = new ColumnarDatasetStore();
+		this.metrics = new Metrics( false );
+		this.numTrainingSlots = numTrainingSlots;
+	}
+
 	public IClassifierBuilder createClassifierBuilder( String classifierName, List<String> classifierArguments, String filterName, List<String> filterArguments, File inputFile ) throws Exception {
-		return new ClassifierBuilder( classifierName, classifierArguments, filterName, filterArguments, inputFile );
+		return trainClassifierBuilder( classifierName, classifierArguments, filterName, filterArguments, inputFile );
+	}
+
+	public IClassifierBuilder createConcurrentClassifierBuilder( String classifierName, List<String> classifierArguments, String filterName, List<String> filterArguments, File inputFile ) throws Exception {
+		return new ConcurrentClassifierBuilder( trainClassifierBuilder( classifierName, classifierArguments, filterName, filterArguments, inputFile ) );
+	}
+
+	public IClassifierBuilder createStreamingClassifierBuilder( String classifierName, List<String> classifierArguments, String filterName, List<String> filterArguments, File inputFile ) throws Exception {
+		Classifier classifier = createClassifier( classifierName, classifierArguments );
+		if ( !( classifier instanceof UpdateableClassifier ) ) {
+			throw new ClassifierNotUpdateableException( classifierName + " does not implement " + UpdateableClassifier.class.getName() );
+		}
+
+		Filter filter = createFilter( filterName, filterArguments );
+
+		DataSource source = new DataSource( inputFile.getAbsolutePath() );
+		if ( !source.isIncremental() ) {
+			throw new IllegalArgumentException( "No incremental loader for " + inputFile );
+		}
+
+		Instances structure = source.getStructure();
+		structure.setClassIndex( new InstancesHelper( structure ).getClassAttribute().index() );
+
+		filter.setInputFormat( structure );
+
+		classifier.buildClassifier( filter.getOutputFormat() );
+
+		long count = 0;
+
+		while ( source.hasMoreElements( structure ) ) {
+			if ( !filter.input( source.nextElement( structure ) ) ) {
+				throw new IllegalArgumentException( filterName + " needs the whole dataset before it produces output and cannot be used for streaming training" );
+			}
+
+			( (UpdateableClassifier) classifier ).updateClassifier( filter.output() );
+
+			count++;
+		}
+
+		filter.batchFinished();
+		if ( filter.numPendingOutput() != 0 ) {
+			throw new IllegalArgumentException( filterName + " produced output after the last instance and cannot be used for streaming training" );
+		}
+
+		logger.info( "trained " + classifierName + " on " + count + " streamed instances from " + inputFile );
+
+		return new ClassifierBuilder( classifier, filter, structure, metrics );
+	}
+
+	public ICachingClassifierBuilder createCachingClassifierBuilder( IClassifierBuilder builder, int maxEntries, long ttlMillis ) {
+		return new CachingClassifierBuilder( builder, getClassifierBuilder( builder ), maxEntries, ttlMillis );
+	}
+
+	public IConfidenceMatrix evaluate( IClassifierBuilder builder, File inputFile ) throws Exception {
+		long start = metrics.start();
+
+		PredictionCounter counter = countPredictions( builder, inputFile );
+
+		metrics.record( Metrics.Stage.EVALUATE, start );
+
+		return createConfidenceMatrix( counter.getClassAttributeOptions(), counter.getCounts() );
+	}
+
+	protected PredictionCounter countPredictions( IClassifierBuilder builder, File inputFile ) throws Exception {
+		if ( ColumnarDatasetStore.isColumnar( inputFile ) ) {
+			Instances instances = readInstances( inputFile );
+
+			PredictionCounter counter = new PredictionCounter( builder, instances );
+			counter.addAll( instances );
+
+			return counter;
+		}
+
+		DataSource source = new DataSource( inputFile.getAbsolutePath() );
+
+		Instances structure = source.getStructure();
+		structure.setClassIndex( new InstancesHelper( structure ).getClassAttribute().index() );
+
+		PredictionCounter counter = new PredictionCounter( builder, structure );
+
+		while ( source.hasMoreElements( structure ) ) {
+			counter.add( source.nextElement( structure ) );
+		}
+
+		return counter;
+	}
+
+	public IEvaluator createEvaluator( IClassifierBuilder builder, int chunkSize ) {
+		return new Evaluator( this, getClassifierBuilder( builder ), chunkSize, metrics );
+	}
+
+	public ICrossValidator createCrossValidator( String classifierName, List<String> classifierArguments, String filterName, List<String> filterArguments ) {
+		return new CrossValidator( this, classifierName, classifierArguments, filterName, filterArguments );
+	}
+
+	public IParameterSearch createParameterSearch( String classifierName, Map<String,List<String>> classifierSearchSpace, String filterName, Map<String,List<String>> filterSearchSpace ) {
+		return new ParameterSearch( this, classifierName, classifierSearchSpace, filterName, filterSearchSpace );
+	}
+
+	public void saveClassifierBuilder( IClassifierBuilder builder, File outputFile ) throws Exception {
+		long start = metrics.start();
+
+		ClassifierBuilder classifierBuilder = getClassifierBuilder( builder );
+
+		//	otherwise single-row updates not yet published would be missing from the file
+		classifierBuilder.flushUpdates();
+
+		modelStore.save( new ClassifierModel( classifierBuilder.getClassifier(), classifierBuilder.getFilter(), classifierBuilder.getStructure() ), outputFile );
+
+		metrics.record( Metrics.Stage.MODEL_SAVE, start );
+	}
+
+	public IClassifierBuilder loadClassifierBuilder( File modelFile ) throws Exception {
+		return loadModel( modelFile );
+	}
+
+	public IClassifierBuilder loadConcurrentClassifierBuilder( File modelFile ) throws Exception {
+		return new ConcurrentClassifierBuilder( loadModel( modelFile ) );
+	}
+
+	ConcurrentClassifierBuilder loadConcurrentClassifierBuilder( File modelFile, int maxCopies ) throws Exception {
+		return new ConcurrentClassifierBuilder( loadModel( modelFile ), maxCopies );
+	}
+
+	public IMetrics getMetrics() {
+		return metrics;
+	}
+
+	public IScoringServer createScoringServer( IClassifierBuilder builder, int port, int maxBatchSize, long maxWaitMicros ) {
+		return createScoringServer( builder, InetAddress.getLoopbackAddress(), port, maxBatchSize, maxWaitMicros );
+	}
+
+	public IScoringServer createScoringServer( IClassifierBuilder builder, InetAddress bindAddress, int port, int maxBatchSize, long maxWaitMicros ) {
+		return new ScoringServer( builder, bindAddress, port, maxBatchSize, maxWaitMicros, metrics );
+	}
+
+	public IModelRegistry createModelRegistry( long memoryBudgetBytes ) {
+		return createModelRegistry( memoryBudgetBytes, Runtime.getRuntime().availableProcessors() );
+	}
+
+	public IModelRegistry createModelRegistry( long memoryBudgetBytes, int maxCopiesPerModel ) {
+		return new ModelRegistry( this, memoryBudgetBytes, maxCopiesPerModel );
 	}
 
 	public IConfidenceMatrix createConfidenceMatrix( Map<String,Integer> classCounts ) {
 		return new ConfidenceMatrix( classCounts );
 	}
+
+	IConfidenceMatrix createConfidenceMatrix( List<String> classAttributeOptions, int[][] counts ) {
+		Map<String,Integer> classCounts = new HashMap<String,Integer>();
+		for ( int expected = 0; expected < counts.length; expected++ ) {
+			int total = 0;
+			for ( int actual = 0; actual < counts.length; actual++ ) {
+				total += counts[ expected ][ actual ];
+			}
+			classCounts.put( classAttributeOptions.get( expected ), total );
+		}
+
+		IConfidenceMatrix ret = createConfidenceMatrix( classCounts );
+
+		for ( int expected = 0; expected < counts.length; expected++ ) {
+			for ( int actual = 0; actual < counts.length; actual++ ) {
+				ret.addPredictions( classAttributeOptions.get( expected ), classAttributeOptions.get( actual ), counts[ expected ][ actual ] );
+			}
+		}
+
+		return ret;
+	}
+
+	protected ClassifierBuilder trainClassifierBuilder( String classifierName, List<String> classifierArguments, String filterName, List<String> filterArguments, File inputFile ) throws Exception {
+		long start = metrics.start();
+
+		Instances rawInstances = readInstances( inputFile );
+
+		metrics.record( Metrics.Stage.TRAIN_READ, start );
+
+		return trainClassifierBuilder( classifierName, classifierArguments, filterName, filterArguments, rawInstances );
+	}
+
+	protected ClassifierBuilder loadModel( File modelFile ) throws Exception {
+		long start = metrics.start();
+
+		ClassifierModel model = modelStore.load( modelFile );
+
+		ClassifierBuilder ret = new ClassifierBuilder( model.getClassifier(), model.getFilter(), model.getStructure(), metrics );
+
+		metrics.record( Metrics.Stage.MODEL_LOAD, start );
+
+		return ret;
+	}
+
+	ClassifierBuilder trainClassifierBuilder( String classifierName, List<String> classifierArguments, String filterName, List<String> filterArguments, Instances rawInstances ) throws Exception {
+		return trainClassifierBuilder( classifierName, classifierArguments, filterName, filterArguments, rawInstances, numTrainingSlots );
+	}
+
+	/*
+	 * numSlots replaces the factory's numTrainingSlots for this build. Drivers that already train folds or
+	 * candidates in parallel pass 1, so N parallel builds do not each start an N-thread ensemble pool.
+	 */
+	ClassifierBuilder trainClassifierBuilder( String classifierName, List<String> classifierArguments, String filterName, List<String> filterArguments, Instances rawInstances, int numSlots ) throws Exception {
+		Classifier classifier = createClassifier( classifierName, classifierArguments );
+		Filter filter = createFilter( filterName, filterArguments );
+
+		long start = metrics.start();
+
+		filter.setInputFormat( rawInstances );
+
+		Instances filteredInstances = Filter.useFilter( rawInstances, filter );
+
+		metrics.record( Metrics.Stage.TRAIN_FILTER, start );
+		start = metrics.start();
+
+		int numMembers = getNumEnsembleMembers( classifier );
+		if ( numMembers < 0 ) {
+			classifier.buildClassifier( filteredInstances );
+
+			metrics.record( Metrics.Stage.TRAIN_BUILD, start );
+
+			return new ClassifierBuilder( classifier, filter, rawInstances, metrics );
+		}
+
+		int usedSlots = setNumExecutionSlots( classifier, classifierArguments, numSlots );
+		long cpuStart = getProcessCpuTime();
+		long wallStart = System.nanoTime();
+
+		//	every member reads the same filtered instances; Weka resamples by index rather than copying the data up front
+		classifier.buildClassifier( filteredInstances );
+
+		long wallNanos = System.nanoTime() - wallStart;
+		long cpuEnd = getProcessCpuTime();
+
+		metrics.record( Metrics.Stage.TRAIN_BUILD, start );
+
+		EnsembleTrainingMetrics trainingMetrics = new EnsembleTrainingMetrics( numMembers, usedSlots, wallNanos, cpuStart >= 0 && cpuEnd >= 0 ? cpuEnd - cpuStart : -1 );
+
+		logger.info( "trained " + classifierName + ": " + trainingMetrics );
+
+		ClassifierBuilder ret = new ClassifierBuilder( classifier, filter, rawInstances, metrics );
+		ret.setTrainingMetrics( trainingMetrics );
+
+		return ret;
+	}
+
+	int getNumTrainingSlots() {
+		return numTrainingSlots;
+	}
+
+	//	-1 if the classifier is not an ensemble that Weka can train in parallel
+	protected int getNumEnsembleMembers( Classifier classifier ) {
+		if ( classifier instanceof ParallelIteratedSingleClassifierEnhancer ) {
+			return ( (IteratedSingleClassifierEnhancer) classifier ).getNumIterations();
+		}
+
+		if ( classifier instanceof ParallelMultipleClassifiersCombiner ) {
+			return ( (MultipleClassifiersCombiner) classifier ).getClassifiers().length;
+		}
+
+		return -1;
+	}
+
+	protected int setNumExecutionSlots( Classifier classifier, List<String> classifierArguments, int numSlots ) {
+		boolean explicit = classifierArguments != null && classifierArguments.contains( "-num-slots" );
+
+		if ( classifier instanceof ParallelIteratedSingleClassifierEnhancer ) {
+			ParallelIteratedSingleClassifierEnhancer ensemble = (ParallelIteratedSingleClassifierEnhancer) classifier;
+			if ( !explicit ) {
+				ensemble.setNumExecutionSlots( numSlots );
+			}
+			return ensemble.getNumExecutionSlots();
+		}
+
+		ParallelMultipleClassifiersCombiner ensemble = (ParallelMultipleClassifiersCombiner) classifier;
+		if ( !explicit ) {
+			ensemble.setNumExecutionSlots( numSlots );
+		}
+		return ensemble.getNumExecutionSlots();
+	}
+
+	protected static long getProcessCpuTime() {
+		OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+
+		return bean instanceof com.sun.management.OperatingSystemMXBean ? ( (com.sun.management.OperatingSystemMXBean) bean ).getProcessCpuTime() : -1;
+	}
+
+	public void convertToColumnar( File inputFile, File outputFile ) throws Exception {
+		columnarStore.convert( inputFile, outputFile );
+	}
+
+	/*
+	 * Dense data is streamed from the file straight into columns and bypasses the dataset cache, so the
+	 * parsed Instances is not kept alongside the columnar copy. Sparse data keeps one small map of
+	 * non-zeros per row, built from the cached parse.
+	 */
+	public IKeyedInstanceSet createKeyedInstanceSet( File inputFile ) throws Exception {
+		if ( isSparse( inputFile ) ) {
+			return new KeyedInstanceSet<String,Double>( readInstances( inputFile ) );
+		}
+
+		return new ColumnarKeyedInstanceSet( inputFile );
+	}
+
+	public IColumnarKeyedInstanceSet createColumnarKeyedInstanceSet( File inputFile ) throws Exception {
+		return new ColumnarKeyedInstanceSet( inputFile );
+	}
+
+	public IColumnarKeyedInstanceSet createMappedKeyedInstanceSet( File columnarFile ) throws Exception {
+		return new MappedKeyedInstanceSet( columnarFile );
+	}
+
+	//	shared with every other reader of the same file and read-only; new Instances( ... ) gives a copy that may be modified
+	Instances readInstances( File inputFile ) throws Exception {
+		return datasetCache.get( inputFile );
+	}
+
+	//	only ARFF files can hold sparse rows, and Weka reads a file as all sparse or all dense, so the first row tells
+	protected boolean isSparse( File inputFile ) throws Exception {
+		if ( ColumnarDatasetStore.isColumnar( inputFile ) || !inputFile.getName().toLowerCase().endsWith( ".arff" ) ) {
+			return false;
+		}
+
+		try ( BufferedReader reader = new BufferedReader( new FileReader( inputFile ) ) ) {
+			ArffLoader.ArffReader arffReader = new ArffLoader.ArffReader( reader, 1 );
+
+			return arffReader.readInstance( arffReader.getStructure() ) instanceof SparseInstance;
+		}
+	}
+
+	DatasetCache getDatasetCache() {
+		return datasetCache;
+	}
+
+	protected ClassifierBuilder getClassifierBuilder( IClassifierBuilder builder ) {
+		if ( builder instanceof CachingClassifierBuilder ) {
+			return getClassifierBuilder( ( (CachingClassifierBuilder) builder ).getDelegate() );
+		}
+
+		if ( builder instanceof ConcurrentClassifierBuilder ) {
+			return ( (ConcurrentClassifierBuilder) builder ).getPrototype();
+		}
+
+		if ( builder instanceof ClassifierBuilder ) {
+			return (ClassifierBuilder) builder;
+		}
+
+		throw new IllegalArgumentException( "Unsupported classifier builder: " + builder.getClass().getName() );
+	}
+
+	protected Classifier createClassifier( String classifierName, List<String> classifierArguments ) throws Exception {
+		String args[] = classifierArguments != null ? classifierArguments.toArray( new String[ 0 ] ) : null;
+
+		return AbstractClassifier.forName( classifierName, args );
+	}
+
+	protected Filter createFilter( String filterName, List<String> filterArguments ) throws Exception {
+		if ( filterName == null ) {
+			return new AllFilter();
+		}
+
+		String args[] = filterArguments != null ? filterArguments.toArray( new String[ 0 ] ) : null;
+
+		Filter filter = (Filter) Class.forName( filterName ).getDeclaredConstructor().newInstance();
+		if ( args != null && ( filter instanceof OptionHandler ) ) {
+			( (OptionHandler) filter ).setOptions( args );
+		}
+
+		return filter;
+	}
 }
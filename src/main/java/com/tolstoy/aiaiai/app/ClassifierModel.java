@@ -0,0 +1,61 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.Serializable;
+
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.filters.Filter;
+
+class ClassifierModel implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final Classifier classifier;
+	private final Filter filter;
+	private final Instances structure;
+	private transient ModelLoadMetrics loadMetrics;
+
+	ClassifierModel( Classifier classifier, Filter filter, Instances structure ) {
+		this.classifier = classifier;
+		this.filter = filter;
+		this.structure = new Instances( structure, 0 );
+	}
+
+	Classifier getClassifier() {
+		return classifier;
+	}
+
+	Filter getFilter() {
+		return filter;
+	}
+
+	Instances getStructure() {
+		return structure;
+	}
+
+	ModelLoadMetrics getLoadMetrics() {
+		return loadMetrics;
+	}
+
+	void setLoadMetrics( ModelLoadMetrics loadMetrics ) {
+		this.loadMetrics = loadMetrics;
+	}
+
+	@Override
+	public String toString() {
+		return "classifier=" + classifier.getClass().getName() + ", filter=" + filter.getClass().getName() + ", attributes=" + structure.numAttributes();
+	}
+}
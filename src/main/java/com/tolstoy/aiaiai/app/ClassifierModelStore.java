@@ -0,0 +1,131 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.BufferedOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.lang.invoke.MethodHandles;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * A model file is a 20 byte header (magic, payload length, CRC32 of the payload) followed by
+ * the serialized ClassifierModel. Loading maps the file instead of copying it onto the heap.
+ */
+class ClassifierModelStore {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private static final int MAGIC = 0x41494d31;
+	private static final int HEADER_SIZE = 4 + 8 + 8;
+
+	void save( ClassifierModel model, File outputFile ) throws Exception {
+		try ( FileChannel channel = FileChannel.open( outputFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING ) ) {
+			channel.position( HEADER_SIZE );
+
+			CRC32 crc = new CRC32();
+
+			ObjectOutputStream out = new ObjectOutputStream( new CheckedOutputStream( new BufferedOutputStream( Channels.newOutputStream( channel ) ), crc ) );
+			out.writeObject( model );
+			out.flush();
+
+			long length = channel.position() - HEADER_SIZE;
+
+			ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+			header.putInt( MAGIC ).putLong( length ).putLong( crc.getValue() );
+			header.flip();
+
+			channel.write( header, 0 );
+		}
+
+		logger.info( "saved " + model + " to " + outputFile );
+	}
+
+	ClassifierModel load( File inputFile ) throws Exception {
+		try ( FileChannel channel = FileChannel.open( inputFile.toPath(), StandardOpenOption.READ ) ) {
+			long fileSize = channel.size();
+			if ( fileSize < HEADER_SIZE ) {
+				throw new StreamCorruptedException( "Model file is too short: " + inputFile );
+			}
+
+			ByteBuffer header = channel.map( FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE );
+
+			if ( header.getInt() != MAGIC ) {
+				throw new StreamCorruptedException( "Not a model file: " + inputFile );
+			}
+
+			long length = header.getLong();
+			long expectedChecksum = header.getLong();
+
+			if ( HEADER_SIZE + length != fileSize ) {
+				throw new StreamCorruptedException( "Model file is truncated, expected " + ( HEADER_SIZE + length ) + " bytes but found " + fileSize + ": " + inputFile );
+			}
+
+			long heapUsedBefore = getHeapUsed();
+			long start = System.nanoTime();
+
+			long checksum = computeChecksum( channel, HEADER_SIZE, fileSize );
+			if ( checksum != expectedChecksum ) {
+				throw new StreamCorruptedException( "Checksum mismatch, expected " + expectedChecksum + " but found " + checksum + ": " + inputFile );
+			}
+
+			long checksumNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+
+			ClassifierModel model;
+			try ( ObjectInputStream in = new ObjectInputStream( new MappedInputStream( channel, HEADER_SIZE, fileSize ) ) ) {
+				model = (ClassifierModel) in.readObject();
+			}
+
+			long deserializeNanos = System.nanoTime() - start;
+
+			model.setLoadMetrics( new ModelLoadMetrics( fileSize, checksumNanos, deserializeNanos, heapUsedBefore, getHeapUsed() ) );
+
+			logger.info( "loaded " + model + " from " + inputFile + ": " + model.getLoadMetrics() );
+
+			return model;
+		}
+	}
+
+	protected long computeChecksum( FileChannel channel, long start, long end ) throws IOException {
+		CRC32 crc = new CRC32();
+
+		MappedInputStream in = new MappedInputStream( channel, start, end );
+
+		MappedByteBuffer window;
+		while ( ( window = in.nextWindow() ) != null ) {
+			crc.update( window );
+		}
+
+		return crc.getValue();
+	}
+
+	protected long getHeapUsed() {
+		Runtime runtime = Runtime.getRuntime();
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.lang.invoke.MethodHandles;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.core.converters.ConverterUtils.DataSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * Binary columnar dataset file, little-endian throughout:
+ *
+ *   int magic, int version, int header length, int rows, int attributes, int class index (-1 if none)
+ *   string relation name
+ *   per attribute: byte type, string name, and for nominal attributes int count followed by the values
+ *   zero padding up to the header length, which is a multiple of 8
+ *   one column per attribute in attribute order, each padded to a multiple of 8 bytes
+ *
+ * Strings are an int byte count followed by UTF-8. The class column holds the int index of each
+ * value in the class attribute's dictionary, or -1 if missing. Every other column holds the doubles
+ * Weka itself stores, so nominal values are their index and missing values are NaN.
+ */
+class ColumnarDatasetStore {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private static final int MAGIC = 0x41494443;
+	private static final int VERSION = 1;
+	private static final byte TYPE_NUMERIC = 0;
+	private static final byte TYPE_NOMINAL = 1;
+
+	static boolean isColumnar( File file ) throws IOException {
+		if ( !file.isFile() || file.length() < 4 ) {
+			return false;
+		}
+
+		try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+			ByteBuffer buffer = ByteBuffer.allocate( 4 ).order( ByteOrder.LITTLE_ENDIAN );
+			channel.read( buffer, 0 );
+			buffer.flip();
+
+			return buffer.remaining() == 4 && buffer.getInt() == MAGIC;
+		}
+	}
+
+	/*
+	 * Two passes over an incremental source, so only one row is on the heap at a time:
+	 * the first counts rows, the second writes each value straight into its mapped column.
+	 */
+	void convert( File inputFile, File outputFile ) throws Exception {
+		long start = System.nanoTime();
+
+		DataSource source = new DataSource( inputFile.getAbsolutePath() );
+
+		if ( !source.isIncremental() ) {
+			save( source.getDataSet( classIndex( source.getStructure() ) ), outputFile );
+			return;
+		}
+
+		Instances structure = source.getStructure();
+		structure.setClassIndex( classIndex( structure ) );
+
+		int numRows = 0;
+		while ( source.hasMoreElements( structure ) ) {
+			source.nextElement( structure );
+			numRows++;
+		}
+
+		source.reset();
+		structure = source.getStructure();
+		structure.setClassIndex( classIndex( structure ) );
+
+		try ( ColumnWriter writer = new ColumnWriter( structure, numRows, outputFile ) ) {
+			int row = 0;
+			while ( source.hasMoreElements( structure ) ) {
+				writer.write( row++, source.nextElement( structure ) );
+			}
+		}
+
+		logger.info( "converted " + inputFile + " to " + outputFile + ": " + numRows + " instances in " + ( System.nanoTime() - start ) / 1000000 + "ms" );
+	}
+
+	void save( Instances instances, File outputFile ) throws Exception {
+		try ( ColumnWriter writer = new ColumnWriter( instances, instances.numInstances(), outputFile ) ) {
+			for ( int row = 0; row < instances.numInstances(); row++ ) {
+				writer.write( row, instances.instance( row ) );
+			}
+		}
+
+		logger.info( "saved " + instances.numInstances() + " instances to " + outputFile );
+	}
+
+	Instances load( File inputFile ) throws Exception {
+		long start = System.nanoTime();
+
+		try ( FileChannel channel = FileChannel.open( inputFile.toPath(), StandardOpenOption.READ ) ) {
+			Header header = readHeader( channel, inputFile );
+
+			double[][] columns = new double[ header.structure.numAttributes() ][];
+			for ( int i = 0; i < columns.length; i++ ) {
+				columns[ i ] = readColumn( channel, header, i );
+			}
+
+			Instances ret = new Instances( header.structure, header.numRows );
+
+			for ( int row = 0; row < header.numRows; row++ ) {
+				double[] values = new double[ columns.length ];
+				for ( int i = 0; i < columns.length; i++ ) {
+					values[ i ] = columns[ i ][ row ];
+				}
+
+				ret.add( new DenseInstance( 1.0, values ) );
+			}
+
+			logger.info( "loaded " + header.numRows + " instances from " + inputFile + " in " + ( System.nanoTime() - start ) / 1000000 + "ms" );
+
+			return ret;
+		}
+	}
+
+	protected double[] readColumn( FileChannel channel, Header header, int attributeIndex ) throws IOException {
+		double[] ret = new double[ header.numRows ];
+		if ( header.numRows == 0 ) {
+			return ret;
+		}
+
+		long offset = header.getColumnOffset( attributeIndex );
+
+		MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, offset, header.getColumnLength( attributeIndex ) );
+		buffer.order( ByteOrder.LITTLE_ENDIAN );
+
+		if ( attributeIndex == header.structure.classIndex() ) {
+			for ( int row = 0; row < ret.length; row++ ) {
+				int value = buffer.getInt();
+				ret[ row ] = value >= 0 ? value : Utils.missingValue();
+			}
+		}
+		else {
+			buffer.asDoubleBuffer().get( ret );
+		}
+
+		return ret;
+	}
+
+	protected Header readHeader( FileChannel channel, File inputFile ) throws IOException {
+		long fileSize = channel.size();
+		if ( fileSize < 6 * 4 ) {
+			throw new StreamCorruptedException( "Columnar dataset is too short: " + inputFile );
+		}
+
+		ByteBuffer prefix = ByteBuffer.allocate( 3 * 4 ).order( ByteOrder.LITTLE_ENDIAN );
+		channel.read( prefix, 0 );
+		prefix.flip();
+
+		if ( prefix.getInt() != MAGIC ) {
+			throw new StreamCorruptedException( "Not a columnar dataset: " + inputFile );
+		}
+
+		int version = prefix.getInt();
+		if ( version != VERSION ) {
+			throw new StreamCorruptedException( "Unsupported columnar dataset version " + version + ": " + inputFile );
+		}
+
+		int headerLength = prefix.getInt();
+		if ( headerLength < 6 * 4 || headerLength > fileSize ) {
+			throw new StreamCorruptedException( "Bad header length " + headerLength + ": " + inputFile );
+		}
+
+		ByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, headerLength ).order( ByteOrder.LITTLE_ENDIAN );
+		buffer.position( 3 * 4 );
+
+		int numRows = buffer.getInt();
+		int numAttributes = buffer.getInt();
+		int classIndex = buffer.getInt();
+		String relationName = getString( buffer );
+
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>( numAttributes );
+		for ( int i = 0; i < numAttributes; i++ ) {
+			byte type = buffer.get();
+			String name = getString( buffer );
+
+			if ( type == TYPE_NUMERIC ) {
+				attributes.add( new Attribute( name ) );
+			}
+			else if ( type == TYPE_NOMINAL ) {
+				int numValues = buffer.getInt();
+				List<String> values = new ArrayList<String>( numValues );
+				for ( int j = 0; j < numValues; j++ ) {
+					values.add( getString( buffer ) );
+				}
+				attributes.add( new Attribute( name, values ) );
+			}
+			else {
+				throw new StreamCorruptedException( "Unknown attribute type " + type + ": " + inputFile );
+			}
+		}
+
+		Instances structure = new Instances( relationName, attributes, 0 );
+		structure.setClassIndex( classIndex );
+
+		Header ret = new Header( structure, numRows, headerLength );
+
+		if ( ret.getFileLength() != fileSize ) {
+			throw new StreamCorruptedException( "Columnar dataset is truncated, expected " + ret.getFileLength() + " bytes but found " + fileSize + ": " + inputFile );
+		}
+
+		return ret;
+	}
+
+	protected int classIndex( Instances structure ) {
+		return new InstancesHelper( structure ).getClassAttribute().index();
+	}
+
+	private static String getString( ByteBuffer buffer ) {
+		byte[] bytes = new byte[ buffer.getInt() ];
+		buffer.get( bytes );
+
+		return new String( bytes, StandardCharsets.UTF_8 );
+	}
+
+	private static void putString( ByteBuffer buffer, String value ) {
+		byte[] bytes = value.getBytes( StandardCharsets.UTF_8 );
+		buffer.putInt( bytes.length );
+		buffer.put( bytes );
+	}
+
+	private static int stringLength( String value ) {
+		return 4 + value.getBytes( StandardCharsets.UTF_8 ).length;
+	}
+
+	private static long pad( long length ) {
+		return ( length + 7 ) & ~7L;
+	}
+
+	static final class Header {
+		private final Instances structure;
+		private final int numRows;
+		private final int headerLength;
+		private final long[] columnOffsets;
+
+		Header( Instances structure, int numRows, int headerLength ) {
+			this.structure = structure;
+			this.numRows = numRows;
+			this.headerLength = headerLength;
+			this.columnOffsets = new long[ structure.numAttributes() + 1 ];
+
+			long offset = headerLength;
+			for ( int i = 0; i < structure.numAttributes(); i++ ) {
+				columnOffsets[ i ] = offset;
+				offset += pad( (long) numRows * ( i == structure.classIndex() ? Integer.BYTES : Double.BYTES ) );
+			}
+			columnOffsets[ structure.numAttributes() ] = offset;
+		}
+
+		Instances getStructure() {
+			return structure;
+		}
+
+		int getNumRows() {
+			return numRows;
+		}
+
+		long getColumnOffset( int attributeIndex ) {
+			return columnOffsets[ attributeIndex ];
+		}
+
+		long getColumnLength( int attributeIndex ) {
+			return (long) numRows * ( attributeIndex == structure.classIndex() ? Integer.BYTES : Double.BYTES );
+		}
+
+		long getFileLength() {
+			return columnOffsets[ columnOffsets.length - 1 ];
+		}
+	}
+
+	/*
+	 * Each column is mapped separately, so a single column is limited to 2GB, or about 268 million rows.
+	 */
+	static final class ColumnWriter implements AutoCloseable {
+		private final FileChannel channel;
+		private final Instances structure;
+		private final MappedByteBuffer[] columns;
+
+		ColumnWriter( Instances structure, int numRows, File outputFile ) throws IOException {
+			this.structure = structure;
+
+			int headerLength = 6 * 4 + stringLength( structure.relationName() );
+			for ( int i = 0; i < structure.numAttributes(); i++ ) {
+				Attribute attribute = structure.attribute( i );
+				if ( !attribute.isNumeric() && !attribute.isNominal() ) {
+					throw new IllegalArgumentException( "Only numeric and nominal attributes can be stored in columns: " + attribute.name() );
+				}
+
+				headerLength += 1 + stringLength( attribute.name() );
+				if ( attribute.isNominal() ) {
+					headerLength += 4;
+					for ( int j = 0; j < attribute.numValues(); j++ ) {
+						headerLength += stringLength( attribute.value( j ) );
+					}
+				}
+			}
+			headerLength = (int) pad( headerLength );
+
+			Header header = new Header( structure, numRows, headerLength );
+
+			for ( int i = 0; i < structure.numAttributes(); i++ ) {
+				if ( header.getColumnLength( i ) > Integer.MAX_VALUE ) {
+					throw new IllegalArgumentException( "Too many rows for a single column: " + numRows );
+				}
+			}
+
+			this.channel = FileChannel.open( outputFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING );
+
+			try {
+				ByteBuffer buffer = ByteBuffer.allocate( headerLength ).order( ByteOrder.LITTLE_ENDIAN );
+				buffer.putInt( MAGIC ).putInt( VERSION ).putInt( headerLength );
+				buffer.putInt( numRows ).putInt( structure.numAttributes() ).putInt( structure.classIndex() );
+				putString( buffer, structure.relationName() );
+
+				for ( int i = 0; i < structure.numAttributes(); i++ ) {
+					Attribute attribute = structure.attribute( i );
+					buffer.put( attribute.isNominal() ? TYPE_NOMINAL : TYPE_NUMERIC );
+					putString( buffer, attribute.name() );
+					if ( attribute.isNominal() ) {
+						buffer.putInt( attribute.numValues() );
+						for ( int j = 0; j < attribute.numValues(); j++ ) {
+							putString( buffer, attribute.value( j ) );
+						}
+					}
+				}
+
+				buffer.position( 0 );
+				channel.write( buffer, 0 );
+
+				//	extend the file so the padding after the last column exists
+				if ( header.getFileLength() > headerLength ) {
+					channel.write( ByteBuffer.allocate( 1 ), header.getFileLength() - 1 );
+				}
+
+				this.columns = new MappedByteBuffer[ structure.numAttributes() ];
+				for ( int i = 0; i < columns.length; i++ ) {
+					columns[ i ] = channel.map( FileChannel.MapMode.READ_WRITE, header.getColumnOffset( i ), header.getColumnLength( i ) );
+					columns[ i ].order( ByteOrder.LITTLE_ENDIAN );
+				}
+			}
+			catch ( IOException | RuntimeException e ) {
+				channel.close();
+				throw e;
+			}
+		}
+
+		void write( int row, Instance instance ) {
+			for ( int i = 0; i < columns.length; i++ ) {
+				double value = instance.value( i );
+
+				if ( i == structure.classIndex() ) {
+					columns[ i ].putInt( row * Integer.BYTES, Utils.isMissingValue( value ) ? -1 : (int) value );
+				}
+				else {
+					columns[ i ].putDouble( row * Double.BYTES, value );
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			for ( MappedByteBuffer column : columns ) {
+				column.force();
+			}
+
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.File;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.lang.invoke.MethodHandles;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * Keeps each value attribute in its own double[], plus an int[] of class ordinals. Memory use is about
+ * 8 bytes per value and 4 bytes per row, and a scan of one column reads memory in order.
+ */
+public class ColumnarKeyedInstanceSet extends AbstractColumnarKeyedInstanceSet {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final double[][] columns;
+	private final int[] classOrdinals;
+
+	public ColumnarKeyedInstanceSet( File inputFile ) throws Exception {
+		this( load( inputFile ) );
+	}
+
+	public ColumnarKeyedInstanceSet( Instances instances ) throws Exception {
+		this( load( instances ) );
+	}
+
+	private ColumnarKeyedInstanceSet( Loader loader ) {
+		super( loader.getAttributeNames(), loader.getClassLabels() );
+
+		this.columns = loader.getColumns();
+		this.classOrdinals = loader.getClassOrdinals();
+
+		logger.debug( "stored " + classOrdinals.length + " rows in " + columns.length + " columns" );
+	}
+
+	public int getNumRows() {
+		return classOrdinals.length;
+	}
+
+	public double getValue( int row, int attribute ) {
+		return columns[ attribute ][ row ];
+	}
+
+	public int getClassOrdinal( int row ) {
+		return classOrdinals[ row ];
+	}
+
+	@Override
+	public void copyRow( int row, double[] values ) {
+		for ( int attribute = 0; attribute < columns.length; attribute++ ) {
+			values[ attribute ] = columns[ attribute ][ row ];
+		}
+	}
+
+	@Override
+	public void copyColumn( int attribute, int fromRow, double[] dest, int destPos, int length ) {
+		System.arraycopy( columns[ attribute ], fromRow, dest, destPos, length );
+	}
+
+	@Override
+	public void copyClassOrdinals( int fromRow, int[] dest, int destPos, int length ) {
+		System.arraycopy( classOrdinals, fromRow, dest, destPos, length );
+	}
+
+	protected void setValue( int row, int attribute, double value ) {
+		columns[ attribute ][ row ] = value;
+	}
+
+	protected void setClassOrdinal( int row, int ordinal ) {
+		classOrdinals[ row ] = ordinal;
+	}
+
+	protected static Loader load( Instances instances ) {
+		Loader ret = new Loader( instances, instances.numInstances() );
+
+		for ( Instance instance : instances ) {
+			ret.add( instance );
+		}
+
+		return ret;
+	}
+
+	//	ARFF and CSV files are streamed row by row when Weka has an incremental loader, so the whole file is never held as Instances
+	protected static Loader load( File inputFile ) throws Exception {
+		if ( ColumnarDatasetStore.isColumnar( inputFile ) ) {
+			return load( new ColumnarDatasetStore().load( inputFile ) );
+		}
+
+		DataSource source = new DataSource( inputFile.getAbsolutePath() );
+		if ( !source.isIncremental() ) {
+			return load( source.getDataSet() );
+		}
+
+		Instances structure = source.getStructure();
+		Loader ret = new Loader( structure, INITIAL_CAPACITY );
+
+		while ( source.hasMoreElements( structure ) ) {
+			ret.add( source.nextElement( structure ) );
+		}
+
+		return ret;
+	}
+
+	private static final class Loader {
+		private final List<String> attributeNames;
+		private final List<String> classLabels;
+		private final int[] attributeIndexes;
+		private final int classIndex;
+		private double[][] columns;
+		private int[] classOrdinals;
+		private int numRows;
+
+		Loader( Instances structure, int capacity ) {
+			InstancesHelper helper = new InstancesHelper( structure );
+
+			List<Attribute> valueAttributes = helper.getValueAttributes();
+
+			this.attributeNames = new ArrayList<String>( valueAttributes.size() );
+			this.attributeIndexes = new int[ valueAttributes.size() ];
+			for ( int i = 0; i < attributeIndexes.length; i++ ) {
+				attributeNames.add( valueAttributes.get( i ).name() );
+				attributeIndexes[ i ] = valueAttributes.get( i ).index();
+			}
+
+			this.classLabels = helper.getClassAttributeOptions();
+			this.classIndex = helper.getClassAttribute().index();
+			this.columns = new double[ attributeIndexes.length ][ capacity ];
+			this.classOrdinals = new int[ capacity ];
+		}
+
+		void add( Instance instance ) {
+			if ( numRows == classOrdinals.length ) {
+				grow( Math.max( INITIAL_CAPACITY, numRows + ( numRows >> 1 ) ) );
+			}
+
+			for ( int attribute = 0; attribute < attributeIndexes.length; attribute++ ) {
+				columns[ attribute ][ numRows ] = instance.value( attributeIndexes[ attribute ] );
+			}
+
+			double classValue = instance.value( classIndex );
+			classOrdinals[ numRows ] = Double.isNaN( classValue ) ? -1 : (int) classValue;
+
+			numRows++;
+		}
+
+		List<String> getAttributeNames() {
+			return attributeNames;
+		}
+
+		List<String> getClassLabels() {
+			return classLabels;
+		}
+
+		double[][] getColumns() {
+			if ( numRows != classOrdinals.length ) {
+				grow( numRows );
+			}
+
+			return columns;
+		}
+
+		int[] getClassOrdinals() {
+			if ( numRows != classOrdinals.length ) {
+				grow( numRows );
+			}
+
+			return classOrdinals;
+		}
+
+		private void grow( int capacity ) {
+			for ( int attribute = 0; attribute < columns.length; attribute++ ) {
+				columns[ attribute ] = Arrays.copyOf( columns[ attribute ], capacity );
+			}
+
+			classOrdinals = Arrays.copyOf( classOrdinals, capacity );
+		}
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.lang.reflect.Field;
+import java.lang.invoke.MethodHandles;
+
+import weka.core.Instances;
+import weka.core.Utils;
+import weka.filters.AllFilter;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Normalize;
+import weka.filters.unsupervised.attribute.PotentialClassIgnorer;
+import weka.filters.unsupervised.attribute.Standardize;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * A fitted filter reduced to arithmetic on a dense attribute vector, so inference skips Weka's
+ * input/batchFinished/output queue. Each transform repeats the filter's own expression in the same
+ * order, which keeps the results bit-for-bit identical. Instances are immutable and may be shared between threads.
+ */
+abstract class CompiledFilter {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private final Instances outputFormat;
+
+	CompiledFilter( Instances outputFormat ) {
+		this.outputFormat = outputFormat;
+	}
+
+	/*
+	 * Returns null when the filter is not one of the supported types or has not been fitted yet,
+	 * in which case callers keep using the filter itself.
+	 */
+	static CompiledFilter compile( Filter filter, Instances inputFormat ) {
+		try {
+			if ( filter.getClass() == AllFilter.class ) {
+				return new Identity( filter.getOutputFormat() );
+			}
+
+			if ( filter.getClass() == Normalize.class ) {
+				Normalize normalize = (Normalize) filter;
+				if ( normalize.getMinArray() == null || normalize.getMaxArray() == null ) {
+					return null;
+				}
+
+				return new NormalizeTransform( filter.getOutputFormat(), getNumericColumns( normalize, inputFormat ),
+												normalize.getMinArray().clone(), normalize.getMaxArray().clone(), normalize.getScale(), normalize.getTranslation() );
+			}
+
+			if ( filter.getClass() == Standardize.class ) {
+				double[] means = (double[]) getField( Standardize.class, "m_Means" ).get( filter );
+				double[] stdDevs = (double[]) getField( Standardize.class, "m_StdDevs" ).get( filter );
+				if ( means == null || stdDevs == null ) {
+					return null;
+				}
+
+				return new StandardizeTransform( filter.getOutputFormat(), getNumericColumns( (Standardize) filter, inputFormat ), means.clone(), stdDevs.clone() );
+			}
+		}
+		catch ( Exception e ) {
+			logger.warn( "cannot compile " + filter.getClass().getName() + ", using the filter instead", e );
+		}
+
+		return null;
+	}
+
+	Instances getOutputFormat() {
+		return outputFormat;
+	}
+
+	/*
+	 * Transforms values in place and returns them. Missing values are left missing.
+	 */
+	abstract double[] apply( double[] values ) throws Exception;
+
+	//	true if instances can skip the filter entirely, which keeps sparse instances sparse
+	boolean isIdentity() {
+		return false;
+	}
+
+	//	the columns the filter changes: numeric, and not the class unless the filter was told to ignore it
+	private static boolean[] getNumericColumns( PotentialClassIgnorer filter, Instances inputFormat ) {
+		int classIndex = filter.getIgnoreClass() ? -1 : inputFormat.classIndex();
+
+		boolean[] ret = new boolean[ inputFormat.numAttributes() ];
+		for ( int i = 0; i < ret.length; i++ ) {
+			ret[ i ] = inputFormat.attribute( i ).isNumeric() && i != classIndex;
+		}
+
+		return ret;
+	}
+
+	private static Field getField( Class<?> clazz, String name ) throws Exception {
+		Field ret = clazz.getDeclaredField( name );
+		ret.setAccessible( true );
+
+		return ret;
+	}
+
+	private static final class Identity extends CompiledFilter {
+		Identity( Instances outputFormat ) {
+			super( outputFormat );
+		}
+
+		double[] apply( double[] values ) {
+			return values;
+		}
+
+		@Override
+		boolean isIdentity() {
+			return true;
+		}
+	}
+
+	private static final class NormalizeTransform extends CompiledFilter {
+		private final boolean[] columns;
+		private final double[] min;
+		private final double[] max;
+		private final double scale;
+		private final double translation;
+
+		NormalizeTransform( Instances outputFormat, boolean[] columns, double[] min, double[] max, double scale, double translation ) {
+			super( outputFormat );
+			this.columns = columns;
+			this.min = min;
+			this.max = max;
+			this.scale = scale;
+			this.translation = translation;
+		}
+
+		double[] apply( double[] values ) throws Exception {
+			for ( int i = 0; i < columns.length; i++ ) {
+				if ( !columns[ i ] || Utils.isMissingValue( values[ i ] ) ) {
+					continue;
+				}
+
+				if ( Double.isNaN( min[ i ] ) || max[ i ] == min[ i ] ) {
+					values[ i ] = 0;
+				}
+				else {
+					values[ i ] = ( values[ i ] - min[ i ] ) / ( max[ i ] - min[ i ] ) * scale + translation;
+					if ( Double.isNaN( values[ i ] ) ) {
+						throw new Exception( "A NaN value was generated while normalizing " + getOutputFormat().attribute( i ).name() );
+					}
+				}
+			}
+
+			return values;
+		}
+	}
+
+	private static final class StandardizeTransform extends CompiledFilter {
+		private final boolean[] columns;
+		private final double[] means;
+		private final double[] stdDevs;
+
+		StandardizeTransform( Instances outputFormat, boolean[] columns, double[] means, double[] stdDevs ) {
+			super( outputFormat );
+			this.columns = columns;
+			this.means = means;
+			this.stdDevs = stdDevs;
+		}
+
+		double[] apply( double[] values ) throws Exception {
+			for ( int i = 0; i < columns.length; i++ ) {
+				if ( !columns[ i ] || Utils.isMissingValue( values[ i ] ) ) {
+					continue;
+				}
+
+				if ( stdDevs[ i ] > 0 ) {
+					values[ i ] = ( values[ i ] - means[ i ] ) / stdDevs[ i ];
+				}
+				else {
+					values[ i ] = values[ i ] - means[ i ];
+				}
+
+				if ( Double.isNaN( values[ i ] ) ) {
+					throw new Exception( "A NaN value was generated while standardizing attribute " + getOutputFormat().attribute( i ).name() );
+				}
+			}
+
+			return values;
+		}
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.lang.invoke.MethodHandles;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierParams;
+import com.tolstoy.aiaiai.api.IPrimitiveClassifierParams;
+import com.tolstoy.aiaiai.api.ISparseClassifierParams;
+import com.tolstoy.aiaiai.api.IKeyedInstance;
+
+/*
+ * Weka filters keep per-batch state, so each concurrent caller borrows its own copy of the
+ * filter and classifier from a pool that grows to the peak number of simultaneous callers, or
+ * to maxCopies if one is given, in which case further callers wait for a copy to be returned.
+ * Copies made before an update, and copies whose filter failed mid-batch, are dropped instead of
+ * being returned to the pool.
+ */
+class ConcurrentClassifierBuilder<V> implements IClassifierBuilder<V> {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private final ClassifierBuilder<V> prototype;
+	private final Queue<ClassifierBuilder<V>> idleBuilders;
+	private final AtomicInteger numCopies;
+	private final int maxCopies;
+	private final Semaphore permits;
+
+	ConcurrentClassifierBuilder( ClassifierBuilder<V> prototype ) throws Exception {
+		this( prototype, 0 );
+	}
+
+	//	maxCopies of 0 lets the pool grow without limit
+	ConcurrentClassifierBuilder( ClassifierBuilder<V> prototype, int maxCopies ) throws Exception {
+		if ( maxCopies < 0 ) {
+			throw new IllegalArgumentException( "maxCopies cannot be negative: " + maxCopies );
+		}
+
+		this.prototype = prototype;
+		this.idleBuilders = new ConcurrentLinkedQueue<ClassifierBuilder<V>>();
+		this.numCopies = new AtomicInteger();
+		this.maxCopies = maxCopies;
+		this.permits = maxCopies > 0 ? new Semaphore( maxCopies ) : null;
+	}
+
+	public IClassifierParams<V> createClassifierParams() {
+		return prototype.createClassifierParams();
+	}
+
+	public IPrimitiveClassifierParams createPrimitiveClassifierParams() {
+		return prototype.createPrimitiveClassifierParams();
+	}
+
+	public ISparseClassifierParams createSparseClassifierParams() {
+		return prototype.createSparseClassifierParams();
+	}
+
+	public String classify( IClassifierParams<V> params ) throws Exception {
+		ClassifierBuilder<V> builder = acquire();
+
+		String ret;
+		try {
+			ret = builder.classify( params );
+		}
+		catch ( Exception e ) {
+			releaseAfterFailure( builder );
+			throw e;
+		}
+
+		release( builder );
+
+		return ret;
+	}
+
+	public List<String> classifyBatch( List<IClassifierParams<V>> paramsList ) throws Exception {
+		ClassifierBuilder<V> builder = acquire();
+
+		List<String> ret;
+		try {
+			ret = builder.classifyBatch( paramsList );
+		}
+		catch ( Exception e ) {
+			releaseAfterFailure( builder );
+			throw e;
+		}
+
+		release( builder );
+
+		return ret;
+	}
+
+	public double[] classifyDistribution( IClassifierParams<V> params ) throws Exception {
+		ClassifierBuilder<V> builder = acquire();
+
+		double[] ret;
+		try {
+			ret = builder.classifyDistribution( params );
+		}
+		catch ( Exception e ) {
+			releaseAfterFailure( builder );
+			throw e;
+		}
+
+		release( builder );
+
+		return ret;
+	}
+
+	public double[] classifyDistribution( IClassifierParams<V> params, double[] distribution ) throws Exception {
+		ClassifierBuilder<V> builder = acquire();
+
+		double[] ret;
+		try {
+			ret = builder.classifyDistribution( params, distribution );
+		}
+		catch ( Exception e ) {
+			releaseAfterFailure( builder );
+			throw e;
+		}
+
+		release( builder );
+
+		return ret;
+	}
+
+	public double[][] classifyDistributionBatch( List<IClassifierParams<V>> paramsList ) throws Exception {
+		ClassifierBuilder<V> builder = acquire();
+
+		double[][] ret;
+		try {
+			ret = builder.classifyDistributionBatch( paramsList );
+		}
+		catch ( Exception e ) {
+			releaseAfterFailure( builder );
+			throw e;
+		}
+
+		release( builder );
+
+		return ret;
+	}
+
+	public List<String> getClassAttributeOptions() {
+		return prototype.getClassAttributeOptions();
+	}
+
+	public void update( IKeyedInstance<String,V> keyedInstance ) throws Exception {
+		prototype.update( keyedInstance );
+	}
+
+	public void updateBatch( List<IKeyedInstance<String,V>> keyedInstances ) throws Exception {
+		prototype.updateBatch( keyedInstances );
+	}
+
+	public void flushUpdates() throws Exception {
+		prototype.flushUpdates();
+	}
+
+	public long getModelVersion() {
+		return prototype.getModelVersion();
+	}
+
+	ClassifierBuilder<V> getPrototype() {
+		return prototype;
+	}
+
+	int getNumCopies() {
+		return numCopies.get();
+	}
+
+	int getMaxCopies() {
+		return maxCopies;
+	}
+
+	protected ClassifierBuilder<V> acquire() throws Exception {
+		if ( permits != null ) {
+			permits.acquire();
+		}
+
+		try {
+			ClassifierBuilder<V> builder;
+			while ( ( builder = idleBuilders.poll() ) != null ) {
+				if ( builder.getModelVersion() == prototype.getModelVersion() ) {
+					return builder;
+				}
+
+				numCopies.decrementAndGet();
+			}
+
+			int count = numCopies.incrementAndGet();
+			logger.debug( "creating classifier copy " + count );
+
+			try {
+				return prototype.copy();
+			}
+			catch ( Exception e ) {
+				numCopies.decrementAndGet();
+				throw e;
+			}
+		}
+		catch ( Exception e ) {
+			releasePermit();
+			throw e;
+		}
+	}
+
+	protected void release( ClassifierBuilder<V> builder ) {
+		if ( builder.getModelVersion() == prototype.getModelVersion() ) {
+			idleBuilders.offer( builder );
+			releasePermit();
+		}
+		else {
+			discard( builder );
+		}
+	}
+
+	/*
+	 * Input errors such as a missing attribute are thrown before the filter is touched, so the copy is
+	 * still good and goes back to the pool; only a copy whose filter was left mid-batch is dropped.
+	 */
+	protected void releaseAfterFailure( ClassifierBuilder<V> builder ) {
+		if ( builder.isFilterInUse() ) {
+			discard( builder );
+		}
+		else {
+			release( builder );
+		}
+	}
+
+	protected void discard( ClassifierBuilder<V> builder ) {
+		numCopies.decrementAndGet();
+		releasePermit();
+	}
+
+	private void releasePermit() {
+		if ( permits != null ) {
+			permits.release();
+		}
+	}
+}
@@ -18,6 +18,7 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.lang.invoke.MethodHandles;
 
 import org.apache.logging.log4j.LogManager;
@@ -25,39 +26,54 @@ import org.apache.logging.log4j.Logger;
 
 import com.tolstoy.aiaiai.api.IConfidenceMatrix;
 
+/*
+ * Counts live in a flat LongAdder[] indexed by expected * numClasses + actual, so any number of
+ * scoring threads can record predictions at once without locking or allocating.
+ */
 class ConfidenceMatrix implements IConfidenceMatrix {
 	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
 
-	private final Map<String,Integer> classCounts, matrix;
+	private final Map<String,Integer> classCounts;
+	private final Map<String,Integer> labelIndexes;
+	private final String[] labels;
+	private final LongAdder[] counts;
 
 	ConfidenceMatrix( Map<String,Integer> classCounts ) {
-		this.classCounts = classCounts;
-		this.matrix = new HashMap<String,Integer>();
+		this.classCounts = new HashMap<String,Integer>( classCounts );
+		this.labels = classCounts.keySet().toArray( new String[ 0 ] );
+		this.labelIndexes = new HashMap<String,Integer>();
+		for ( int i = 0; i < labels.length; i++ ) {
+			labelIndexes.put( labels[ i ], i );
+		}
 
-		for ( String expected : classCounts.keySet() ) {
-			for ( String actual : classCounts.keySet() ) {
-				this.matrix.put( createKey( expected, actual ), 0 );
-			}
+		this.counts = new LongAdder[ labels.length * labels.length ];
+		for ( int i = 0; i < counts.length; i++ ) {
+			counts[ i ] = new LongAdder();
 		}
 	}
 
 	public void addPrediction( String expected, String actual ) {
-		String key = createKey( expected, actual );
+		counts[ getIndex( expected ) * labels.length + getIndex( actual ) ].increment();
+	}
 
-		matrix.put( key, matrix.get( key ) + 1 );
+	public void addPredictions( String expected, String actual, int count ) {
+		counts[ getIndex( expected ) * labels.length + getIndex( actual ) ].add( count );
+	}
+
+	public long getCount( String expected, String actual ) {
+		return getCount( getIndex( expected ), getIndex( actual ) );
 	}
 
 	public List<String> getResults() {
 		List<String> ret = new ArrayList<String>();
 
-		for ( String expected : classCounts.keySet() ) {
-			int numCorrect = matrix.get( createKey( expected, expected ) );
-			String msg = "For " + expected + ", num correct=" + numCorrect + ".";
-			for ( String actual : classCounts.keySet() ) {
-				if ( expected.equals( actual ) ) {
+		for ( int expected = 0; expected < labels.length; expected++ ) {
+			String msg = "For " + labels[ expected ] + ", num correct=" + getCount( expected, expected ) + ".";
+			for ( int actual = 0; actual < labels.length; actual++ ) {
+				if ( expected == actual ) {
 					continue;
 				}
-				msg += " Num incorrectly coded as " + actual + "=" + matrix.get( createKey( expected, actual ) ) + ".";
+				msg += " Num incorrectly coded as " + labels[ actual ] + "=" + getCount( expected, actual ) + ".";
 			}
 
 			ret.add( msg );
@@ -71,7 +87,88 @@ class ConfidenceMatrix implements IConfidenceMatrix {
 	}
 
 	public Map<String,Integer> getMatrix() {
-		return new HashMap<String,Integer>( matrix );
+		Map<String,Integer> ret = new HashMap<String,Integer>();
+
+		for ( int expected = 0; expected < labels.length; expected++ ) {
+			for ( int actual = 0; actual < labels.length; actual++ ) {
+				ret.put( createKey( labels[ expected ], labels[ actual ] ), (int) getCount( expected, actual ) );
+			}
+		}
+
+		return ret;
+	}
+
+	public double getPrecision( String label ) {
+		int index = getIndex( label );
+
+		long predicted = 0;
+		for ( int expected = 0; expected < labels.length; expected++ ) {
+			predicted += getCount( expected, index );
+		}
+
+		return predicted > 0 ? (double) getCount( index, index ) / predicted : 0;
+	}
+
+	public double getRecall( String label ) {
+		int index = getIndex( label );
+
+		long total = 0;
+		for ( int actual = 0; actual < labels.length; actual++ ) {
+			total += getCount( index, actual );
+		}
+
+		return total > 0 ? (double) getCount( index, index ) / total : 0;
+	}
+
+	public double getF1( String label ) {
+		double precision = getPrecision( label );
+		double recall = getRecall( label );
+
+		return precision + recall > 0 ? 2 * precision * recall / ( precision + recall ) : 0;
+	}
+
+	public double getKappa() {
+		long[] snapshot = new long[ counts.length ];
+		long total = 0;
+		for ( int i = 0; i < counts.length; i++ ) {
+			snapshot[ i ] = counts[ i ].sum();
+			total += snapshot[ i ];
+		}
+
+		if ( total == 0 ) {
+			return 0;
+		}
+
+		double observed = 0, chance = 0;
+
+		for ( int i = 0; i < labels.length; i++ ) {
+			long rowTotal = 0, columnTotal = 0;
+			for ( int j = 0; j < labels.length; j++ ) {
+				rowTotal += snapshot[ i * labels.length + j ];
+				columnTotal += snapshot[ j * labels.length + i ];
+			}
+
+			observed += snapshot[ i * labels.length + i ];
+			chance += (double) rowTotal * columnTotal;
+		}
+
+		observed /= total;
+		chance /= (double) total * total;
+
+		return chance < 1 ? ( observed - chance ) / ( 1 - chance ) : 1;
+	}
+
+	protected long getCount( int expected, int actual ) {
+		return counts[ expected * labels.length + actual ].sum();
+	}
+
+	protected int getIndex( String label ) {
+		Integer index = labelIndexes.get( label );
+		if ( index == null ) {
+			throw new IllegalArgumentException( "Unknown class: " + label );
+		}
+
+		return index;
 	}
 
 	protected String createKey( String expected, String actual ) {
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.util.List;
+import java.util.Collections;
+
+import com.tolstoy.aiaiai.api.IConfidenceMatrix;
+import com.tolstoy.aiaiai.api.ICrossValidationResult;
+
+class CrossValidationResult implements ICrossValidationResult {
+	private final List<IConfidenceMatrix> foldMatrices;
+	private final IConfidenceMatrix mergedMatrix;
+	private final long elapsedMillis;
+
+	CrossValidationResult( List<IConfidenceMatrix> foldMatrices, IConfidenceMatrix mergedMatrix, long elapsedMillis ) {
+		this.foldMatrices = Collections.unmodifiableList( foldMatrices );
+		this.mergedMatrix = mergedMatrix;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	public List<IConfidenceMatrix> getFoldMatrices() {
+		return foldMatrices;
+	}
+
+	public IConfidenceMatrix getMergedMatrix() {
+		return mergedMatrix;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return foldMatrices.size() + " folds in " + elapsedMillis + "ms, merged=" + mergedMatrix.getMatrix();
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.File;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.lang.invoke.MethodHandles;
+
+import weka.core.Instances;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.tolstoy.aiaiai.api.IConfidenceMatrix;
+import com.tolstoy.aiaiai.api.ICrossValidator;
+import com.tolstoy.aiaiai.api.ICrossValidationResult;
+
+class CrossValidator implements ICrossValidator {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private final ClassifierBuilderFactory factory;
+	private final String classifierName;
+	private final List<String> classifierArguments;
+	private final String filterName;
+	private final List<String> filterArguments;
+
+	CrossValidator( ClassifierBuilderFactory factory, String classifierName, List<String> classifierArguments, String filterName, List<String> filterArguments ) {
+		this.factory = factory;
+		this.classifierName = classifierName;
+		this.classifierArguments = classifierArguments;
+		this.filterName = filterName;
+		this.filterArguments = filterArguments;
+	}
+
+	public ICrossValidationResult crossValidate( File inputFile, int numFolds, int numRepetitions, long seed, boolean stratify ) throws Exception {
+		return crossValidate( inputFile, numFolds, numRepetitions, seed, stratify, ForkJoinPool.commonPool() );
+	}
+
+	public ICrossValidationResult crossValidate( File inputFile, int numFolds, int numRepetitions, long seed, boolean stratify, ExecutorService executor ) throws Exception {
+		if ( numFolds < 2 ) {
+			throw new IllegalArgumentException( "Need at least 2 folds: " + numFolds );
+		}
+
+		if ( numRepetitions < 1 ) {
+			throw new IllegalArgumentException( "Need at least 1 repetition: " + numRepetitions );
+		}
+
+		long start = System.currentTimeMillis();
+
+		Instances data = factory.readInstances( inputFile );
+
+		List<Callable<PredictionCounter>> tasks = new ArrayList<Callable<PredictionCounter>>( numFolds * numRepetitions );
+
+		for ( int repetition = 0; repetition < numRepetitions; repetition++ ) {
+			Instances randomized = new Instances( data );
+			randomized.randomize( new Random( seed + repetition ) );
+			if ( stratify ) {
+				randomized.stratify( numFolds );
+			}
+
+			for ( int fold = 0; fold < numFolds; fold++ ) {
+				final int currentFold = fold;
+				tasks.add( () -> runFold( randomized, numFolds, currentFold ) );
+			}
+		}
+
+		List<IConfidenceMatrix> foldMatrices = new ArrayList<IConfidenceMatrix>( tasks.size() );
+		List<String> classAttributeOptions = null;
+		int[][] merged = null;
+
+		for ( Future<PredictionCounter> future : executor.invokeAll( tasks ) ) {
+			PredictionCounter counter = future.get();
+			int[][] counts = counter.getCounts();
+
+			if ( merged == null ) {
+				classAttributeOptions = counter.getClassAttributeOptions();
+				merged = new int[ counts.length ][ counts.length ];
+			}
+
+			for ( int expected = 0; expected < counts.length; expected++ ) {
+				for ( int actual = 0; actual < counts.length; actual++ ) {
+					merged[ expected ][ actual ] += counts[ expected ][ actual ];
+				}
+			}
+
+			foldMatrices.add( factory.createConfidenceMatrix( classAttributeOptions, counts ) );
+		}
+
+		ICrossValidationResult ret = new CrossValidationResult( foldMatrices, factory.createConfidenceMatrix( classAttributeOptions, merged ), System.currentTimeMillis() - start );
+
+		logger.info( numRepetitions + "x" + numFolds + " cross-validation of " + classifierName + " on " + inputFile + ": " + ret );
+
+		return ret;
+	}
+
+	protected PredictionCounter runFold( Instances randomized, int numFolds, int fold ) throws Exception {
+		Instances train = randomized.trainCV( numFolds, fold );
+		Instances test = randomized.testCV( numFolds, fold );
+
+		//	folds already run in parallel, so each ensemble trains on one slot
+		ClassifierBuilder builder = factory.trainClassifierBuilder( classifierName, classifierArguments, filterName, filterArguments, train, 1 );
+
+		PredictionCounter counter = new PredictionCounter( builder, test );
+		counter.addAll( test );
+
+		return counter;
+	}
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.lang.invoke.MethodHandles;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.converters.ConverterUtils.DataSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * Parsed datasets keyed by path, length and modification time, so rewriting a file causes a reparse
+ * and drops the parse of the old contents.
+ * The returned Instances is shared by every caller, so it is a ReadOnlyInstances; copy it before
+ * randomizing, stratifying or deleting rows. Concurrent requests for the same file wait on a single parse.
+ */
+class DatasetCache {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	static final int DEFAULT_MAX_ENTRIES = 8;
+
+	private final ColumnarDatasetStore columnarStore;
+	private final int maxEntries;
+	private final long maxValues;
+	private final LinkedHashMap<Key,FutureTask<Instances>> entries;
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+	private final AtomicLong evictions;
+
+	DatasetCache() {
+		this( DEFAULT_MAX_ENTRIES, Runtime.getRuntime().maxMemory() / 4 / Double.BYTES );
+	}
+
+	DatasetCache( int maxEntries, long maxValues ) {
+		if ( maxEntries < 1 || maxValues < 1 ) {
+			throw new IllegalArgumentException( "Cache limits must be positive: maxEntries=" + maxEntries + ", maxValues=" + maxValues );
+		}
+
+		this.columnarStore = new ColumnarDatasetStore();
+		this.maxEntries = maxEntries;
+		this.maxValues = maxValues;
+		this.entries = new LinkedHashMap<Key,FutureTask<Instances>>( 16, 0.75f, true );
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.evictions = new AtomicLong();
+	}
+
+	Instances get( File inputFile ) throws Exception {
+		Key key = new Key( inputFile );
+		FutureTask<Instances> task;
+		boolean loader = false;
+
+		synchronized ( this ) {
+			task = entries.get( key );
+			if ( task == null ) {
+				removeStale( key );
+
+				task = new FutureTask<Instances>( () -> read( inputFile ) );
+				entries.put( key, task );
+				loader = true;
+			}
+		}
+
+		if ( loader ) {
+			misses.incrementAndGet();
+			task.run();
+		}
+		else {
+			hits.incrementAndGet();
+		}
+
+		try {
+			Instances ret = task.get();
+			if ( loader ) {
+				evict();
+			}
+			return ret;
+		}
+		catch ( ExecutionException e ) {
+			synchronized ( this ) {
+				entries.remove( key, task );
+			}
+
+			Throwable cause = e.getCause();
+			throw cause instanceof Exception ? (Exception) cause : e;
+		}
+	}
+
+	synchronized void clear() {
+		entries.clear();
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	long getHits() {
+		return hits.get();
+	}
+
+	long getMisses() {
+		return misses.get();
+	}
+
+	long getEvictions() {
+		return evictions.get();
+	}
+
+	protected Instances read( File inputFile ) throws Exception {
+		long start = System.nanoTime();
+
+		Instances ret = ColumnarDatasetStore.isColumnar( inputFile ) ? columnarStore.load( inputFile ) : DataSource.read( inputFile.getAbsolutePath() );
+		if ( ret == null ) {
+			throw new IllegalArgumentException( "Cannot read " + inputFile );
+		}
+
+		ret.setClassIndex( new InstancesHelper( ret ).getClassAttribute().index() );
+
+		logger.info( "parsed " + inputFile + ": " + ret.numInstances() + " instances in " + ( System.nanoTime() - start ) / 1000000 + "ms" );
+
+		return new ReadOnlyInstances( ret );
+	}
+
+	//	an earlier version of a rewritten file is never asked for again, so it is dropped now rather than left to the LRU
+	private void removeStale( Key key ) {
+		Iterator<Key> iter = entries.keySet().iterator();
+		while ( iter.hasNext() ) {
+			if ( iter.next().path.equals( key.path ) ) {
+				iter.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	//	least recently used first; entries still loading count as empty and are never evicted
+	protected synchronized void evict() {
+		long numValues = 0;
+		for ( FutureTask<Instances> task : entries.values() ) {
+			numValues += numValues( task );
+		}
+
+		Iterator<FutureTask<Instances>> iter = entries.values().iterator();
+		while ( iter.hasNext() && ( entries.size() > maxEntries || numValues > maxValues ) ) {
+			FutureTask<Instances> task = iter.next();
+			if ( task.isDone() ) {
+				numValues -= numValues( task );
+				iter.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	private static long numValues( FutureTask<Instances> task ) {
+		if ( !task.isDone() ) {
+			return 0;
+		}
+
+		try {
+			Instances instances = task.get();
+			if ( instances.numInstances() == 0 || !( instances.instance( 0 ) instanceof SparseInstance ) ) {
+				return (long) instances.numInstances() * instances.numAttributes();
+			}
+
+			//	sparse data is charged for what it stores, not for its width
+			long ret = 0;
+			for ( Instance instance : instances ) {
+				ret += instance.numValues();
+			}
+			return ret;
+		}
+		catch ( Exception e ) {
+			return 0;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "entries=" + size() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+	}
+
+	private static final class Key {
+		private final String path;
+		private final long length;
+		private final long lastModified;
+
+		Key( File file ) throws Exception {
+			this.path = file.getCanonicalPath();
+			this.length = file.length();
+			this.lastModified = file.lastModified();
+		}
+
+		@Override
+		public boolean equals( Object obj ) {
+			if ( !( obj instanceof Key ) ) {
+				return false;
+			}
+
+			Key other = (Key) obj;
+
+			return path.equals( other.path ) && length == other.length && lastModified == other.lastModified;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash( path, length, lastModified );
+		}
+	}
+}
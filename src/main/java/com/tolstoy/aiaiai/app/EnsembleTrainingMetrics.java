@@ -0,0 +1,72 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+/*
+ * Timing for one whole ensemble build. Weka trains the members on its own threads and does not report
+ * them separately, so there are no true per-member figures: the per-member values are the totals divided
+ * by the number of members. The CPU-to-wall ratio is process CPU time over wall time. It only
+ * approximates how many cores the build kept busy, since process CPU time also counts GC, JIT and
+ * anything else running in the JVM at the same time, such as other folds.
+ */
+class EnsembleTrainingMetrics {
+	private final int numMembers;
+	private final int numSlots;
+	private final long wallNanos;
+	private final long cpuNanos;
+
+	EnsembleTrainingMetrics( int numMembers, int numSlots, long wallNanos, long cpuNanos ) {
+		this.numMembers = numMembers;
+		this.numSlots = numSlots;
+		this.wallNanos = wallNanos;
+		this.cpuNanos = cpuNanos;
+	}
+
+	int getNumMembers() {
+		return numMembers;
+	}
+
+	int getNumSlots() {
+		return numSlots;
+	}
+
+	long getWallNanos() {
+		return wallNanos;
+	}
+
+	//	-1 if the JVM cannot report process CPU time
+	long getCpuNanos() {
+		return cpuNanos;
+	}
+
+	long getMeanWallNanosPerMember() {
+		return numMembers > 0 ? wallNanos / numMembers : 0;
+	}
+
+	long getMeanCpuNanosPerMember() {
+		return numMembers > 0 && cpuNanos >= 0 ? cpuNanos / numMembers : -1;
+	}
+
+	double getCpuToWallRatio() {
+		return cpuNanos >= 0 && wallNanos > 0 ? cpuNanos / (double) wallNanos : Double.NaN;
+	}
+
+	@Override
+	public String toString() {
+		return "members=" + numMembers + ", slots=" + numSlots + ", wallMillis=" + wallNanos / 1000000 +
+				", meanWallMicrosPerMember=" + getMeanWallNanosPerMember() / 1000 + ", meanCpuMicrosPerMember=" + getMeanCpuNanosPerMember() / 1000 +
+				", processCpuToWall=" + String.format( "%.2f", getCpuToWallRatio() );
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import com.tolstoy.aiaiai.api.IConfidenceMatrix;
+import com.tolstoy.aiaiai.api.IEvaluationResult;
+
+class EvaluationResult implements IEvaluationResult {
+	private final IConfidenceMatrix matrix;
+	private final long numRows;
+	private final int numChunks;
+	private final int numModelCopies;
+	private final long elapsedNanos;
+
+	EvaluationResult( IConfidenceMatrix matrix, long numRows, int numChunks, int numModelCopies, long elapsedNanos ) {
+		this.matrix = matrix;
+		this.numRows = numRows;
+		this.numChunks = numChunks;
+		this.numModelCopies = numModelCopies;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	public IConfidenceMatrix getMatrix() {
+		return matrix;
+	}
+
+	public long getNumRows() {
+		return numRows;
+	}
+
+	public int getNumChunks() {
+		return numChunks;
+	}
+
+	public int getNumModelCopies() {
+		return numModelCopies;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedNanos / 1000000;
+	}
+
+	public double getRowsPerSecond() {
+		return elapsedNanos > 0 ? numRows * 1e9 / elapsedNanos : 0;
+	}
+
+	@Override
+	public String toString() {
+		return numRows + " rows in " + numChunks + " chunks on " + numModelCopies + " model copies in " + getElapsedMillis() + "ms, rowsPerSecond=" +
+				String.format( "%.0f", getRowsPerSecond() ) + ", matrix=" + matrix.getMatrix();
+	}
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.lang.invoke.MethodHandles;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.tolstoy.aiaiai.api.IClassifierParams;
+import com.tolstoy.aiaiai.api.IColumnarKeyedInstanceSet;
+import com.tolstoy.aiaiai.api.IConfidenceMatrix;
+import com.tolstoy.aiaiai.api.IEvaluationResult;
+import com.tolstoy.aiaiai.api.IEvaluator;
+import com.tolstoy.aiaiai.api.IKeyedInstance;
+import com.tolstoy.aiaiai.api.IKeyedInstanceSet;
+import com.tolstoy.aiaiai.api.IPrimitiveClassifierParams;
+
+/*
+ * Splits a keyed instance set into chunks of rows and scores the chunks on the executor. Each chunk
+ * borrows a builder copy that no other thread is using and makes its own params and its own counts.
+ * Nothing is shared while scoring, and the per-chunk counts are summed at the end. Copies are pooled
+ * on the evaluator, so the pool grows to the peak number of concurrently running chunks and later
+ * evaluations reuse it. Copies made before a model update, or whose chunk threw, are dropped.
+ */
+class Evaluator implements IEvaluator {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private final ClassifierBuilderFactory factory;
+	private final ClassifierBuilder prototype;
+	private final int chunkSize;
+	private final Metrics metrics;
+	private final List<String> classAttributeOptions;
+	private final Map<String,Integer> classIndexes;
+	private final Queue<ClassifierBuilder> idleCopies;
+
+	Evaluator( ClassifierBuilderFactory factory, ClassifierBuilder prototype, int chunkSize, Metrics metrics ) {
+		if ( chunkSize < 1 ) {
+			throw new IllegalArgumentException( "chunkSize must be at least 1 but is " + chunkSize );
+		}
+
+		this.factory = factory;
+		this.prototype = prototype;
+		this.chunkSize = chunkSize;
+		this.metrics = metrics;
+		this.classAttributeOptions = prototype.getClassAttributeOptions();
+		this.idleCopies = new ConcurrentLinkedQueue<ClassifierBuilder>();
+
+		this.classIndexes = new HashMap<String,Integer>();
+		for ( int i = 0; i < classAttributeOptions.size(); i++ ) {
+			classIndexes.put( classAttributeOptions.get( i ), i );
+		}
+	}
+
+	public IEvaluationResult evaluate( IKeyedInstanceSet keyedInstanceSet ) throws Exception {
+		return evaluate( keyedInstanceSet, ForkJoinPool.commonPool() );
+	}
+
+	public IEvaluationResult evaluate( IKeyedInstanceSet keyedInstanceSet, ExecutorService executor ) throws Exception {
+		long start = System.nanoTime();
+		long metricsStart = metrics.start();
+
+		IColumnarKeyedInstanceSet columnar = keyedInstanceSet instanceof IColumnarKeyedInstanceSet ? (IColumnarKeyedInstanceSet) keyedInstanceSet : null;
+		List<IKeyedInstance<String,Double>> keyedInstances = columnar == null ? keyedInstanceSet.getKeyedInstances() : null;
+		int numRows = columnar != null ? columnar.getNumRows() : keyedInstances.size();
+
+		List<Callable<int[][]>> tasks = new ArrayList<Callable<int[][]>>( numRows / chunkSize + 1 );
+
+		for ( int from = 0; from < numRows; from += chunkSize ) {
+			final int chunkFrom = from;
+			final int chunkTo = Math.min( numRows, from + chunkSize );
+
+			if ( columnar != null ) {
+				tasks.add( () -> evaluateChunk( columnar, chunkFrom, chunkTo ) );
+			}
+			else {
+				tasks.add( () -> evaluateChunk( keyedInstances.subList( chunkFrom, chunkTo ) ) );
+			}
+		}
+
+		int[][] merged = new int[ classAttributeOptions.size() ][ classAttributeOptions.size() ];
+		long numScored = 0;
+
+		for ( Future<int[][]> future : executor.invokeAll( tasks ) ) {
+			int[][] counts = future.get();
+
+			for ( int expected = 0; expected < counts.length; expected++ ) {
+				for ( int actual = 0; actual < counts.length; actual++ ) {
+					merged[ expected ][ actual ] += counts[ expected ][ actual ];
+					numScored += counts[ expected ][ actual ];
+				}
+			}
+		}
+
+		metrics.record( Metrics.Stage.EVALUATE, metricsStart );
+
+		IConfidenceMatrix matrix = factory.createConfidenceMatrix( classAttributeOptions, merged );
+
+		IEvaluationResult ret = new EvaluationResult( matrix, numScored, tasks.size(), idleCopies.size(), System.nanoTime() - start );
+
+		logger.info( "evaluated " + ret );
+
+		return ret;
+	}
+
+	protected int[][] evaluateChunk( IColumnarKeyedInstanceSet<String> columnar, int from, int to ) throws Exception {
+		ClassifierBuilder builder = acquire();
+
+		//	not returned to the pool if this throws, since its Weka filter may have been left mid-batch
+		int[][] ret = countChunk( builder, columnar, from, to );
+
+		release( builder );
+
+		return ret;
+	}
+
+	protected int[][] evaluateChunk( List<IKeyedInstance<String,Double>> keyedInstances ) throws Exception {
+		ClassifierBuilder builder = acquire();
+
+		int[][] ret = countChunk( builder, keyedInstances );
+
+		release( builder );
+
+		return ret;
+	}
+
+	//	reads the columns by index, so the rows need no views and no string keys
+	private int[][] countChunk( ClassifierBuilder builder, IColumnarKeyedInstanceSet<String> columnar, int from, int to ) throws Exception {
+		IPrimitiveClassifierParams params = builder.createPrimitiveClassifierParams();
+
+		List<String> attributeNames = columnar.getAttributeNames();
+		int[] indexes = new int[ attributeNames.size() ];
+		for ( int i = 0; i < indexes.length; i++ ) {
+			indexes[ i ] = params.getIndex( attributeNames.get( i ) );
+		}
+
+		List<String> classLabels = columnar.getClassLabels();
+		int[] expectedIndexes = new int[ classLabels.size() ];
+		for ( int i = 0; i < expectedIndexes.length; i++ ) {
+			expectedIndexes[ i ] = classIndexes.getOrDefault( classLabels.get( i ), -1 );
+		}
+
+		int[][] counts = new int[ classAttributeOptions.size() ][ classAttributeOptions.size() ];
+
+		for ( int row = from; row < to; row++ ) {
+			int ordinal = columnar.getClassOrdinal( row );
+			if ( ordinal < 0 || expectedIndexes[ ordinal ] < 0 ) {
+				continue;
+			}
+
+			for ( int i = 0; i < indexes.length; i++ ) {
+				params.setValue( indexes[ i ], columnar.getValue( row, i ) );
+			}
+
+			counts[ expectedIndexes[ ordinal ] ][ classIndexes.get( builder.classify( params ) ) ]++;
+		}
+
+		return counts;
+	}
+
+	private int[][] countChunk( ClassifierBuilder builder, List<IKeyedInstance<String,Double>> keyedInstances ) throws Exception {
+		IClassifierParams denseParams = builder.createPrimitiveClassifierParams();
+		IClassifierParams sparseParams = builder.createSparseClassifierParams();
+
+		int[][] counts = new int[ classAttributeOptions.size() ][ classAttributeOptions.size() ];
+
+		for ( IKeyedInstance<String,Double> keyedInstance : keyedInstances ) {
+			Integer expected = keyedInstance.getExpectedClass() != null ? classIndexes.get( keyedInstance.getExpectedClass() ) : null;
+			if ( expected == null ) {
+				continue;
+			}
+
+			IClassifierParams params = keyedInstance instanceof SparseKeyedInstance ? sparseParams : denseParams;
+			params.clear();
+
+			for ( String key : keyedInstance.getKeys() ) {
+				params.setValue( key, keyedInstance.getValue( key ) );
+			}
+
+			counts[ expected ][ classIndexes.get( builder.classify( params ) ) ]++;
+		}
+
+		return counts;
+	}
+
+	protected ClassifierBuilder acquire() throws Exception {
+		ClassifierBuilder ret;
+		while ( ( ret = idleCopies.poll() ) != null ) {
+			if ( ret.getModelVersion() == prototype.getModelVersion() ) {
+				return ret;
+			}
+		}
+
+		return prototype.copy();
+	}
+
+	protected void release( ClassifierBuilder builder ) {
+		if ( builder.getModelVersion() == prototype.getModelVersion() ) {
+			idleCopies.offer( builder );
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import com.tolstoy.aiaiai.api.IHistogramSnapshot;
+
+class HistogramSnapshot implements IHistogramSnapshot {
+	private final long[] bucketCounts;
+	private final long count;
+	private final long sum;
+	private final long max;
+
+	HistogramSnapshot( long[] bucketCounts, long count, long sum, long max ) {
+		this.bucketCounts = bucketCounts;
+		this.count = count;
+		this.sum = sum;
+		this.max = max;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMeanNanos() {
+		return count > 0 ? (double) sum / count : 0;
+	}
+
+	public long getMaxNanos() {
+		return max;
+	}
+
+	//	the upper bound of the bucket holding the percentile, capped at the largest value recorded
+	public long getPercentileNanos( double percentile ) {
+		if ( percentile < 0 || percentile > 100 ) {
+			throw new IllegalArgumentException( "Percentile must be between 0 and 100: " + percentile );
+		}
+
+		long total = 0;
+		for ( long bucketCount : bucketCounts ) {
+			total += bucketCount;
+		}
+
+		if ( total == 0 ) {
+			return 0;
+		}
+
+		long target = Math.max( 1, (long) Math.ceil( percentile / 100 * total ) );
+		long seen = 0;
+
+		for ( int i = 0; i < bucketCounts.length; i++ ) {
+			seen += bucketCounts[ i ];
+			if ( seen >= target ) {
+				return Math.min( LatencyHistogram.getBucketUpperBound( i ), max );
+			}
+		}
+
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + count + ", meanMicros=" + String.format( "%.1f", getMeanNanos() / 1000 ) + ", p50Micros=" + getPercentileNanos( 50 ) / 1000 +
+				", p99Micros=" + getPercentileNanos( 99 ) / 1000 + ", maxMicros=" + max / 1000;
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.util.Collections;
+import java.util.Map;
+
+import com.tolstoy.aiaiai.api.IMetrics;
+import com.tolstoy.aiaiai.api.IMetricsExporter;
+
+/*
+ * Keeps a reference to the registered metrics and flattens them on every scrape.
+ */
+public class InMemoryMetricsExporter implements IMetricsExporter {
+	private volatile IMetrics metrics;
+
+	public void register( IMetrics metrics ) {
+		this.metrics = metrics;
+	}
+
+	public void unregister() {
+		this.metrics = null;
+	}
+
+	public Map<String,Double> scrape() {
+		IMetrics current = metrics;
+
+		return current != null ? Metrics.flatten( current ) : Collections.<String,Double>emptyMap();
+	}
+}
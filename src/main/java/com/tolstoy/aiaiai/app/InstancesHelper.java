@@ -30,13 +30,12 @@ class InstancesHelper {
 	private final Instances base;
 
 	InstancesHelper( Instances base ) {
-		this.base = new Instances( base );
+		this.base = base;
 
 		Attribute tempClassAttribute = null;
 
-		Enumeration<Attribute> e = this.base.enumerateAttributes();
-		while ( e.hasMoreElements() ) {
-			Attribute a = e.nextElement();
+		for ( int i = 0; i < this.base.numAttributes(); i++ ) {
+			Attribute a = this.base.attribute( i );
 			if ( a.enumerateValues() != null ) {
 				if ( tempClassAttribute != null ) {
 					throw new IllegalArgumentException( "Found multiple class attributes" );
@@ -54,9 +53,8 @@ class InstancesHelper {
 	List<Attribute> getValueAttributes() {
 		List<Attribute> ret = new ArrayList<Attribute>();
 
-		Enumeration<Attribute> e = base.enumerateAttributes();
-		while ( e.hasMoreElements() ) {
-			Attribute a = e.nextElement();
+		for ( int i = 0; i < base.numAttributes(); i++ ) {
+			Attribute a = base.attribute( i );
 			if ( a.enumerateValues() == null ) {
 				ret.add( a );
 			}
@@ -66,9 +64,8 @@ class InstancesHelper {
 	}
 
 	Attribute getClassAttribute() {
-		Enumeration<Attribute> e = this.base.enumerateAttributes();
-		while ( e.hasMoreElements() ) {
-			Attribute a = e.nextElement();
+		for ( int i = 0; i < this.base.numAttributes(); i++ ) {
+			Attribute a = this.base.attribute( i );
 			if ( a.enumerateValues() != null ) {
 				return a;
 			}
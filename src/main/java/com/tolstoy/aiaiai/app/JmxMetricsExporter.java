@@ -0,0 +1,126 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.lang.invoke.MethodHandles;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.tolstoy.aiaiai.api.IMetrics;
+import com.tolstoy.aiaiai.api.IMetricsExporter;
+
+/*
+ * Publishes metrics as read-only attributes of a dynamic MBean on the platform MBean server,
+ * so JMX clients and JMX-to-Prometheus bridges can scrape them. Values are computed when read.
+ */
+public class JmxMetricsExporter implements IMetricsExporter {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	public static final String DEFAULT_OBJECT_NAME = "com.tolstoy.aiaiai:type=Metrics";
+
+	private final ObjectName objectName;
+	private final MBeanServer server;
+
+	public JmxMetricsExporter() throws Exception {
+		this( DEFAULT_OBJECT_NAME );
+	}
+
+	public JmxMetricsExporter( String objectName ) throws Exception {
+		this.objectName = new ObjectName( objectName );
+		this.server = ManagementFactory.getPlatformMBeanServer();
+	}
+
+	public void register( IMetrics metrics ) throws Exception {
+		server.registerMBean( new MetricsMBean( metrics ), objectName );
+
+		logger.info( "registered metrics as " + objectName );
+	}
+
+	public void unregister() throws Exception {
+		if ( server.isRegistered( objectName ) ) {
+			server.unregisterMBean( objectName );
+		}
+	}
+
+	public ObjectName getObjectName() {
+		return objectName;
+	}
+
+	private static final class MetricsMBean implements DynamicMBean {
+		private final IMetrics metrics;
+
+		MetricsMBean( IMetrics metrics ) {
+			this.metrics = metrics;
+		}
+
+		public Object getAttribute( String name ) throws AttributeNotFoundException {
+			Double ret = Metrics.flatten( metrics ).get( name );
+			if ( ret == null ) {
+				throw new AttributeNotFoundException( name );
+			}
+
+			return ret;
+		}
+
+		public AttributeList getAttributes( String[] names ) {
+			Map<String,Double> values = Metrics.flatten( metrics );
+
+			AttributeList ret = new AttributeList();
+			for ( String name : names ) {
+				Double value = values.get( name );
+				if ( value != null ) {
+					ret.add( new Attribute( name, value ) );
+				}
+			}
+
+			return ret;
+		}
+
+		public MBeanInfo getMBeanInfo() {
+			Map<String,Double> values = Metrics.flatten( metrics );
+
+			MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[ values.size() ];
+			int i = 0;
+			for ( String name : values.keySet() ) {
+				attributes[ i++ ] = new MBeanAttributeInfo( name, Double.class.getName(), name, true, false, false );
+			}
+
+			return new MBeanInfo( Metrics.class.getName(), "aiaiai metrics", attributes, null, null, null );
+		}
+
+		public void setAttribute( Attribute attribute ) {
+			throw new UnsupportedOperationException( "Metrics are read-only" );
+		}
+
+		public AttributeList setAttributes( AttributeList attributes ) {
+			return new AttributeList();
+		}
+
+		public Object invoke( String actionName, Object[] params, String[] signature ) {
+			throw new UnsupportedOperationException( "No operations: " + actionName );
+		}
+	}
+}
@@ -24,6 +24,7 @@ import java.lang.invoke.MethodHandles;
 import weka.core.Attribute;
 import weka.core.Instances;
 import weka.core.Instance;
+import weka.core.SparseInstance;
 import weka.core.converters.ConverterUtils.DataSource;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -37,9 +38,12 @@ public class KeyedInstanceSet<C,V> implements IKeyedInstanceSet<C,V> {
 
 	private final List<IKeyedInstance<C,V>> keyedInstances;
 
+	//	parses the file itself; ClassifierBuilderFactory.createKeyedInstanceSet reuses the factory's cached parse instead
 	public KeyedInstanceSet( File inputFile ) throws Exception {
-		Instances instances = DataSource.read( inputFile.getAbsolutePath() );
+		this( ColumnarDatasetStore.isColumnar( inputFile ) ? new ColumnarDatasetStore().load( inputFile ) : DataSource.read( inputFile.getAbsolutePath() ) );
+	}
 
+	public KeyedInstanceSet( Instances instances ) throws Exception {
 		InstancesHelper helper = new InstancesHelper( instances );
 
 		List<Attribute> valueAttributes = helper.getValueAttributes();
@@ -47,8 +51,6 @@ public class KeyedInstanceSet<C,V> implements IKeyedInstanceSet<C,V> {
 
 		this.keyedInstances = new ArrayList<IKeyedInstance<C,V>>( instances.numInstances() );
 
-		instances.setClassIndex( classAttribute.index() );
-
 		for ( Instance instance : instances ) {
 			this.keyedInstances.add( createKeyedInstance( instance, valueAttributes, classAttribute ) );
 		}
@@ -59,6 +61,10 @@ public class KeyedInstanceSet<C,V> implements IKeyedInstanceSet<C,V> {
 	}
 
 	protected IKeyedInstance createKeyedInstance( Instance instance, List<Attribute> valueAttributes, Attribute classAttribute ) throws Exception {
+		if ( instance instanceof SparseInstance ) {
+			return createSparseKeyedInstance( instance, classAttribute );
+		}
+
 		IKeyedInstance ret = new KeyedInstance<C,V>();
 
 		for ( Attribute valueAttribute : valueAttributes ) {
@@ -70,6 +76,24 @@ public class KeyedInstanceSet<C,V> implements IKeyedInstanceSet<C,V> {
 		return ret;
 	}
 
+	//	only the stored values, so a wide sparse row stays as small as its non-zeros
+	protected IKeyedInstance createSparseKeyedInstance( Instance instance, Attribute classAttribute ) throws Exception {
+		IKeyedInstance ret = new SparseKeyedInstance<C,V>();
+
+		for ( int i = 0; i < instance.numValues(); i++ ) {
+			Attribute attribute = instance.attributeSparse( i );
+			double value = instance.valueSparse( i );
+
+			if ( attribute.index() != classAttribute.index() && attribute.enumerateValues() == null && value != 0 ) {
+				ret.setValue( attribute.name(), value );
+			}
+		}
+
+		ret.setExpectedClass( classAttribute.value( (int) instance.value( classAttribute.index() ) ) );
+
+		return ret;
+	}
+
 	@Override
 	public String toString() {
 		String ret = keyedInstances.size() + " instances:\n";
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Log-linear histogram of nanosecond durations in the style of HdrHistogram: values below 32 get
+ * their own bucket, and every power of two above that is split into 32 buckets, so any recorded
+ * value is off by at most about 3%. Values above MAX_VALUE, about 18 minutes, are counted in the last bucket.
+ *
+ * Recording threads are spread over stripes by thread id, each with its own buckets, count, sum and max,
+ * so threads on different cores do not contend on the same cache lines. A stripe is allocated the
+ * first time a thread records into it; snapshot() merges the stripes.
+ */
+class LatencyHistogram {
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+
+	static final long MAX_VALUE = ( 1L << ( MAX_EXPONENT + 1 ) ) - 1;
+	static final int NUM_BUCKETS = ( MAX_EXPONENT - SUB_BUCKET_BITS + 2 ) * SUB_BUCKET_COUNT;
+
+	//	a power of two of at least twice the cores, so the stripe is a mask of the thread id
+	static final int NUM_STRIPES = Math.min( 64, Integer.highestOneBit( Runtime.getRuntime().availableProcessors() * 2 - 1 ) << 1 );
+
+	//	slots after the buckets in each stripe
+	private static final int COUNT = NUM_BUCKETS;
+	private static final int SUM = NUM_BUCKETS + 1;
+	private static final int MAX = NUM_BUCKETS + 2;
+	private static final int STRIPE_LENGTH = NUM_BUCKETS + 3;
+
+	private final AtomicReferenceArray<AtomicLongArray> stripes;
+
+	LatencyHistogram() {
+		this.stripes = new AtomicReferenceArray<AtomicLongArray>( NUM_STRIPES );
+	}
+
+	void record( long nanos ) {
+		if ( nanos < 0 ) {
+			nanos = 0;
+		}
+
+		AtomicLongArray stripe = getStripe();
+
+		stripe.incrementAndGet( getBucket( Math.min( nanos, MAX_VALUE ) ) );
+		stripe.incrementAndGet( COUNT );
+		stripe.addAndGet( SUM, nanos );
+
+		long current;
+		while ( nanos > ( current = stripe.get( MAX ) ) && !stripe.compareAndSet( MAX, current, nanos ) ) {
+		}
+	}
+
+	void reset() {
+		for ( int i = 0; i < NUM_STRIPES; i++ ) {
+			AtomicLongArray stripe = stripes.get( i );
+			if ( stripe != null ) {
+				for ( int j = 0; j < STRIPE_LENGTH; j++ ) {
+					stripe.set( j, 0 );
+				}
+			}
+		}
+	}
+
+	HistogramSnapshot snapshot() {
+		long[] bucketCounts = new long[ NUM_BUCKETS ];
+		long count = 0, sum = 0, max = 0;
+
+		for ( int i = 0; i < NUM_STRIPES; i++ ) {
+			AtomicLongArray stripe = stripes.get( i );
+			if ( stripe == null ) {
+				continue;
+			}
+
+			for ( int j = 0; j < NUM_BUCKETS; j++ ) {
+				bucketCounts[ j ] += stripe.get( j );
+			}
+
+			count += stripe.get( COUNT );
+			sum += stripe.get( SUM );
+			max = Math.max( max, stripe.get( MAX ) );
+		}
+
+		return new HistogramSnapshot( bucketCounts, count, sum, max );
+	}
+
+	protected AtomicLongArray getStripe() {
+		int index = (int) Thread.currentThread().getId() & ( NUM_STRIPES - 1 );
+
+		AtomicLongArray ret = stripes.get( index );
+		if ( ret == null ) {
+			stripes.compareAndSet( index, null, new AtomicLongArray( STRIPE_LENGTH ) );
+			ret = stripes.get( index );
+		}
+
+		return ret;
+	}
+
+	static int getBucket( long value ) {
+		if ( value < SUB_BUCKET_COUNT ) {
+			return (int) value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros( value );
+		int subBucket = (int) ( value >>> ( exponent - SUB_BUCKET_BITS ) ) & ( SUB_BUCKET_COUNT - 1 );
+
+		return ( exponent - SUB_BUCKET_BITS + 1 ) * SUB_BUCKET_COUNT + subBucket;
+	}
+
+	//	smallest value that falls in the bucket
+	static long getBucketLowerBound( int bucket ) {
+		if ( bucket < SUB_BUCKET_COUNT ) {
+			return bucket;
+		}
+
+		int exponent = bucket / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+		long subBucket = bucket % SUB_BUCKET_COUNT;
+
+		return ( SUB_BUCKET_COUNT + subBucket ) << ( exponent - SUB_BUCKET_BITS );
+	}
+
+	static long getBucketUpperBound( int bucket ) {
+		return bucket + 1 < NUM_BUCKETS ? getBucketLowerBound( bucket + 1 ) - 1 : MAX_VALUE;
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+class MappedInputStream extends InputStream {
+	static final long DEFAULT_WINDOW_SIZE = 1L << 28;
+
+	private final FileChannel channel;
+	private final long end;
+	private final long windowSize;
+	private long position;
+	private MappedByteBuffer window;
+
+	MappedInputStream( FileChannel channel, long start, long end ) {
+		this( channel, start, end, DEFAULT_WINDOW_SIZE );
+	}
+
+	MappedInputStream( FileChannel channel, long start, long end, long windowSize ) {
+		this.channel = channel;
+		this.position = start;
+		this.end = end;
+		this.windowSize = windowSize;
+	}
+
+	MappedByteBuffer nextWindow() throws IOException {
+		if ( window != null && window.hasRemaining() ) {
+			return window;
+		}
+
+		if ( position >= end ) {
+			return null;
+		}
+
+		long size = Math.min( windowSize, end - position );
+
+		window = channel.map( FileChannel.MapMode.READ_ONLY, position, size );
+		position += size;
+
+		return window;
+	}
+
+	@Override
+	public int read() throws IOException {
+		MappedByteBuffer buffer = nextWindow();
+		if ( buffer == null ) {
+			return -1;
+		}
+
+		return buffer.get() & 0xff;
+	}
+
+	@Override
+	public int read( byte[] b, int off, int len ) throws IOException {
+		if ( len == 0 ) {
+			return 0;
+		}
+
+		MappedByteBuffer buffer = nextWindow();
+		if ( buffer == null ) {
+			return -1;
+		}
+
+		int count = Math.min( len, buffer.remaining() );
+		buffer.get( b, off, count );
+
+		return count;
+	}
+
+	@Override
+	public int available() {
+		long remaining = ( window != null ? window.remaining() : 0 ) + end - position;
+
+		return (int) Math.min( Integer.MAX_VALUE, remaining );
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.File;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.ArrayList;
+import java.lang.invoke.MethodHandles;
+
+import weka.core.Attribute;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/*
+ * A read-only keyed instance set over a columnar dataset file (see ColumnarDatasetStore) that is
+ * memory mapped, not loaded. The columns stay in the page cache outside the heap, and the OS pages them
+ * in as rows are read. So the set can be much larger than -Xmx, and scanning it creates no garbage
+ * beyond the views. Views cannot be modified.
+ */
+public class MappedKeyedInstanceSet extends AbstractColumnarKeyedInstanceSet {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private final int numRows;
+	private final DoubleBuffer[] columns;
+	private final IntBuffer classOrdinals;
+	private final DoubleBuffer classValues;
+
+	public MappedKeyedInstanceSet( File columnarFile ) throws Exception {
+		this( columnarFile, readHeader( columnarFile ) );
+	}
+
+	private MappedKeyedInstanceSet( File columnarFile, ColumnarDatasetStore.Header header ) throws Exception {
+		this( columnarFile, header, new InstancesHelper( header.getStructure() ) );
+	}
+
+	private MappedKeyedInstanceSet( File columnarFile, ColumnarDatasetStore.Header header, InstancesHelper helper ) throws Exception {
+		super( getNames( helper.getValueAttributes() ), helper.getClassAttributeOptions() );
+
+		List<Attribute> valueAttributes = helper.getValueAttributes();
+		int classIndex = helper.getClassAttribute().index();
+
+		this.numRows = header.getNumRows();
+		this.columns = new DoubleBuffer[ valueAttributes.size() ];
+
+		//	the mappings stay valid after the channel is closed
+		try ( FileChannel channel = FileChannel.open( columnarFile.toPath(), StandardOpenOption.READ ) ) {
+			for ( int i = 0; i < columns.length; i++ ) {
+				columns[ i ] = map( channel, header, valueAttributes.get( i ).index() ).asDoubleBuffer();
+			}
+
+			//	the file stores int ordinals for its own class attribute; any other nominal column holds doubles
+			if ( classIndex == header.getStructure().classIndex() ) {
+				this.classOrdinals = map( channel, header, classIndex ).asIntBuffer();
+				this.classValues = null;
+			}
+			else {
+				this.classOrdinals = null;
+				this.classValues = map( channel, header, classIndex ).asDoubleBuffer();
+			}
+		}
+
+		logger.info( "mapped " + numRows + " rows in " + columns.length + " columns from " + columnarFile );
+	}
+
+	public int getNumRows() {
+		return numRows;
+	}
+
+	public double getValue( int row, int attribute ) {
+		return columns[ attribute ].get( row );
+	}
+
+	public int getClassOrdinal( int row ) {
+		if ( classOrdinals != null ) {
+			return classOrdinals.get( row );
+		}
+
+		double value = classValues.get( row );
+
+		return Double.isNaN( value ) ? -1 : (int) value;
+	}
+
+	@Override
+	public void copyColumn( int attribute, int fromRow, double[] dest, int destPos, int length ) {
+		columns[ attribute ].get( fromRow, dest, destPos, length );
+	}
+
+	@Override
+	public void copyClassOrdinals( int fromRow, int[] dest, int destPos, int length ) {
+		if ( classOrdinals != null ) {
+			classOrdinals.get( fromRow, dest, destPos, length );
+		}
+		else {
+			super.copyClassOrdinals( fromRow, dest, destPos, length );
+		}
+	}
+
+	protected void setValue( int row, int attribute, double value ) {
+		throw new UnsupportedOperationException( "Mapped keyed instance sets are read-only" );
+	}
+
+	protected void setClassOrdinal( int row, int ordinal ) {
+		throw new UnsupportedOperationException( "Mapped keyed instance sets are read-only" );
+	}
+
+	private static MappedByteBuffer map( FileChannel channel, ColumnarDatasetStore.Header header, int attributeIndex ) throws Exception {
+		MappedByteBuffer ret = channel.map( FileChannel.MapMode.READ_ONLY, header.getColumnOffset( attributeIndex ), header.getColumnLength( attributeIndex ) );
+		ret.order( ByteOrder.LITTLE_ENDIAN );
+
+		return ret;
+	}
+
+	private static ColumnarDatasetStore.Header readHeader( File columnarFile ) throws Exception {
+		if ( !ColumnarDatasetStore.isColumnar( columnarFile ) ) {
+			throw new IllegalArgumentException( "Not a columnar dataset, convert it first with convertToColumnar: " + columnarFile );
+		}
+
+		try ( FileChannel channel = FileChannel.open( columnarFile.toPath(), StandardOpenOption.READ ) ) {
+			return new ColumnarDatasetStore().readHeader( channel, columnarFile );
+		}
+	}
+
+	private static List<String> getNames( List<Attribute> attributes ) {
+		List<String> ret = new ArrayList<String>( attributes.size() );
+		for ( Attribute attribute : attributes ) {
+			ret.add( attribute.name() );
+		}
+
+		return ret;
+	}
+}
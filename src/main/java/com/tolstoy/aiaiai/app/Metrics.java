@@ -0,0 +1,198 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.tolstoy.aiaiai.api.IHistogramSnapshot;
+import com.tolstoy.aiaiai.api.IMetrics;
+
+/*
+ * Per-stage latency histograms and event counters shared by a factory and every builder it creates.
+ * Stages and counters are enums so recording is an array lookup; when disabled, start() skips the clock
+ * and record() does nothing. Factories create it disabled, since every classify would otherwise read the
+ * clock several times; call setEnabled( true ) to start recording. Calls already running when it is
+ * enabled are not recorded.
+ */
+class Metrics implements IMetrics {
+	enum Stage {
+		BUILDER_CREATE( "builder.create" ),
+		CLASSIFY_TOTAL( "classify.total" ),
+		CLASSIFY_VECTOR( "classify.vector" ),
+		CLASSIFY_FILTER( "classify.filter" ),
+		CLASSIFY_MODEL( "classify.model" ),
+		BATCH_TOTAL( "classifyBatch.total" ),
+		BATCH_FILTER( "classifyBatch.filter" ),
+		BATCH_MODEL( "classifyBatch.model" ),
+		UPDATE( "update" ),
+		TRAIN_READ( "train.read" ),
+		TRAIN_FILTER( "train.filter" ),
+		TRAIN_BUILD( "train.build" ),
+		EVALUATE( "evaluate" ),
+		MODEL_SAVE( "model.save" ),
+		MODEL_LOAD( "model.load" ),
+		SERVER_REQUEST( "server.request" );
+
+		private final String name;
+
+		Stage( String name ) {
+			this.name = name;
+		}
+
+		String getName() {
+			return name;
+		}
+	}
+
+	enum Counter {
+		CLASSIFY_ROWS( "classify.rows" ),
+		ATTRIBUTE_NOT_SET( "attributeNotSet" ),
+		VALUE_PARSE_FAILURES( "valueParseFailures" ),
+		SERVER_BATCHES( "server.batches" ),
+		SERVER_REJECTED( "server.rejected" );
+
+		private final String name;
+
+		Counter( String name ) {
+			this.name = name;
+		}
+
+		String getName() {
+			return name;
+		}
+	}
+
+	private final LatencyHistogram[] histograms;
+	private final LongAdder[] counters;
+	private volatile boolean enabled;
+
+	Metrics( boolean enabled ) {
+		this.enabled = enabled;
+
+		this.histograms = new LatencyHistogram[ Stage.values().length ];
+		for ( int i = 0; i < histograms.length; i++ ) {
+			histograms[ i ] = new LatencyHistogram();
+		}
+
+		this.counters = new LongAdder[ Counter.values().length ];
+		for ( int i = 0; i < counters.length; i++ ) {
+			counters[ i ] = new LongAdder();
+		}
+	}
+
+	long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	//	start is 0 when the call began while disabled; recording it after setEnabled( true ) would log the whole uptime as one latency
+	void record( Stage stage, long start ) {
+		if ( enabled && start != 0 ) {
+			histograms[ stage.ordinal() ].record( System.nanoTime() - start );
+		}
+	}
+
+	void increment( Counter counter ) {
+		if ( enabled ) {
+			counters[ counter.ordinal() ].increment();
+		}
+	}
+
+	void add( Counter counter, long value ) {
+		if ( enabled ) {
+			counters[ counter.ordinal() ].add( value );
+		}
+	}
+
+	public Map<String,Long> getCounters() {
+		Map<String,Long> ret = new LinkedHashMap<String,Long>();
+		for ( Counter counter : Counter.values() ) {
+			ret.put( counter.getName(), counters[ counter.ordinal() ].sum() );
+		}
+
+		return ret;
+	}
+
+	public Map<String,IHistogramSnapshot> getHistograms() {
+		Map<String,IHistogramSnapshot> ret = new LinkedHashMap<String,IHistogramSnapshot>();
+		for ( Stage stage : Stage.values() ) {
+			ret.put( stage.getName(), histograms[ stage.ordinal() ].snapshot() );
+		}
+
+		return ret;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled( boolean enabled ) {
+		this.enabled = enabled;
+	}
+
+	public void reset() {
+		for ( LatencyHistogram histogram : histograms ) {
+			histogram.reset();
+		}
+
+		for ( LongAdder counter : counters ) {
+			counter.reset();
+		}
+	}
+
+	/*
+	 * Flattens metrics to name/value pairs for exporters: each counter as is, and each histogram as
+	 * count, mean, p50, p90, p99 and max, in microseconds.
+	 */
+	static Map<String,Double> flatten( IMetrics metrics ) {
+		Map<String,Double> ret = new LinkedHashMap<String,Double>();
+
+		for ( Map.Entry<String,Long> entry : metrics.getCounters().entrySet() ) {
+			ret.put( entry.getKey(), (double) entry.getValue() );
+		}
+
+		for ( Map.Entry<String,IHistogramSnapshot> entry : metrics.getHistograms().entrySet() ) {
+			IHistogramSnapshot snapshot = entry.getValue();
+			String name = entry.getKey();
+
+			ret.put( name + ".count", (double) snapshot.getCount() );
+			ret.put( name + ".meanMicros", snapshot.getMeanNanos() / 1000 );
+			ret.put( name + ".p50Micros", snapshot.getPercentileNanos( 50 ) / 1000.0 );
+			ret.put( name + ".p90Micros", snapshot.getPercentileNanos( 90 ) / 1000.0 );
+			ret.put( name + ".p99Micros", snapshot.getPercentileNanos( 99 ) / 1000.0 );
+			ret.put( name + ".maxMicros", snapshot.getMaxNanos() / 1000.0 );
+		}
+
+		return ret;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder ret = new StringBuilder();
+
+		for ( Map.Entry<String,Long> entry : getCounters().entrySet() ) {
+			ret.append( entry.getKey() ).append( '=' ).append( entry.getValue() ).append( '\n' );
+		}
+
+		for ( Map.Entry<String,IHistogramSnapshot> entry : getHistograms().entrySet() ) {
+			if ( entry.getValue().getCount() > 0 ) {
+				ret.append( entry.getKey() ).append( ": " ).append( entry.getValue() ).append( '\n' );
+			}
+		}
+
+		return ret.toString();
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.lang.invoke.MethodHandles;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierParams;
+
+/*
+ * Collects single-row requests from many threads into batches for one builder. A single dispatcher
+ * thread takes the first waiting request, then keeps collecting until the batch is full or maxWaitNanos
+ * have passed since that first request, and classifies the batch with one classifyBatch call. Because
+ * only the dispatcher touches the builder, it does not need to be thread-safe. The queue is bounded and
+ * submit fails fast when it is full, so latency stays bounded under overload. Requests whose future is
+ * already done, because the caller timed out and cancelled it, are dropped without being classified.
+ * The batcher can be started again after it is stopped; each start gets a new dispatcher thread.
+ */
+class MicroBatcher<V> {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private final IClassifierBuilder<V> builder;
+	private final int maxBatchSize;
+	private final long maxWaitNanos;
+	private final BlockingQueue<Request<V>> queue;
+	private final Metrics metrics;
+	private final AtomicLong numBatches;
+	private final AtomicLong numRejected;
+	private final AtomicLong numCancelled;
+	private Thread dispatcher;
+	private volatile boolean running;
+
+	MicroBatcher( IClassifierBuilder<V> builder, int maxBatchSize, long maxWaitMicros, int queueCapacity, Metrics metrics ) {
+		if ( maxBatchSize < 1 || maxWaitMicros < 0 || queueCapacity < maxBatchSize ) {
+			throw new IllegalArgumentException( "Bad batching limits: maxBatchSize=" + maxBatchSize + ", maxWaitMicros=" + maxWaitMicros + ", queueCapacity=" + queueCapacity );
+		}
+
+		this.builder = builder;
+		this.maxBatchSize = maxBatchSize;
+		this.maxWaitNanos = maxWaitMicros * 1000;
+		this.queue = new ArrayBlockingQueue<Request<V>>( queueCapacity );
+		this.metrics = metrics;
+		this.numBatches = new AtomicLong();
+		this.numRejected = new AtomicLong();
+		this.numCancelled = new AtomicLong();
+	}
+
+	synchronized void start() {
+		if ( running ) {
+			throw new IllegalStateException( "Batcher already started" );
+		}
+
+		running = true;
+
+		dispatcher = new Thread( this::dispatch, "micro-batcher" );
+		dispatcher.setDaemon( true );
+		dispatcher.start();
+	}
+
+	//	waits for the batch in progress, then fails whatever is still queued
+	synchronized void stop() {
+		if ( !running ) {
+			return;
+		}
+
+		running = false;
+		dispatcher.interrupt();
+
+		try {
+			dispatcher.join();
+		}
+		catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+
+		dispatcher = null;
+
+		Request<V> request;
+		while ( ( request = queue.poll() ) != null ) {
+			request.future.completeExceptionally( new RejectedExecutionException( "Batcher stopped" ) );
+		}
+	}
+
+	CompletableFuture<String> submit( IClassifierParams<V> params ) {
+		Request<V> request = new Request<V>( params );
+
+		if ( !running || !queue.offer( request ) ) {
+			numRejected.incrementAndGet();
+			metrics.increment( Metrics.Counter.SERVER_REJECTED );
+			request.future.completeExceptionally( new RejectedExecutionException( running ? "Queue is full" : "Batcher stopped" ) );
+		}
+		else if ( !running && queue.remove( request ) ) {
+			//	stop() cleared running before draining, so a request queued after the drain is failed here instead
+			request.future.completeExceptionally( new RejectedExecutionException( "Batcher stopped" ) );
+		}
+
+		return request.future;
+	}
+
+	long getNumBatches() {
+		return numBatches.get();
+	}
+
+	long getNumRejected() {
+		return numRejected.get();
+	}
+
+	long getNumCancelled() {
+		return numCancelled.get();
+	}
+
+	protected void dispatch() {
+		List<Request<V>> batch = new ArrayList<Request<V>>( maxBatchSize );
+		List<IClassifierParams<V>> paramsList = new ArrayList<IClassifierParams<V>>( maxBatchSize );
+
+		while ( running ) {
+			try {
+				Request<V> first = queue.take();
+				if ( isCancelled( first ) ) {
+					continue;
+				}
+
+				batch.add( first );
+
+				long deadline = System.nanoTime() + maxWaitNanos;
+
+				while ( batch.size() < maxBatchSize ) {
+					long remaining = deadline - System.nanoTime();
+					Request<V> request = remaining > 0 ? queue.poll( remaining, TimeUnit.NANOSECONDS ) : queue.poll();
+					if ( request == null ) {
+						break;
+					}
+
+					if ( !isCancelled( request ) ) {
+						batch.add( request );
+					}
+				}
+
+				for ( Request<V> request : batch ) {
+					paramsList.add( request.params );
+				}
+
+				classify( batch, paramsList );
+			}
+			catch ( InterruptedException e ) {
+				for ( Request<V> request : batch ) {
+					request.future.completeExceptionally( new RejectedExecutionException( "Batcher stopped" ) );
+				}
+			}
+			finally {
+				batch.clear();
+				paramsList.clear();
+			}
+		}
+	}
+
+	protected boolean isCancelled( Request<V> request ) {
+		if ( !request.future.isDone() ) {
+			return false;
+		}
+
+		numCancelled.incrementAndGet();
+		return true;
+	}
+
+	//	if the batch fails, retry row by row so one bad request does not fail the rest
+	protected void classify( List<Request<V>> batch, List<IClassifierParams<V>> paramsList ) {
+		numBatches.incrementAndGet();
+		metrics.increment( Metrics.Counter.SERVER_BATCHES );
+
+		List<String> predictions;
+		try {
+			predictions = builder.classifyBatch( paramsList );
+		}
+		catch ( Exception e ) {
+			logger.debug( "batch of " + batch.size() + " failed, classifying rows separately", e );
+
+			for ( Request<V> request : batch ) {
+				try {
+					request.future.complete( builder.classify( request.params ) );
+				}
+				catch ( Exception rowException ) {
+					request.future.completeExceptionally( rowException );
+				}
+			}
+
+			return;
+		}
+
+		for ( int i = 0; i < batch.size(); i++ ) {
+			batch.get( i ).future.complete( predictions.get( i ) );
+		}
+	}
+
+	private static final class Request<V> {
+		private final IClassifierParams<V> params;
+		private final CompletableFuture<String> future;
+
+		Request( IClassifierParams<V> params ) {
+			this.params = params;
+			this.future = new CompletableFuture<String>();
+		}
+	}
+}
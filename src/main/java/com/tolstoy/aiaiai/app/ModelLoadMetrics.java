@@ -0,0 +1,61 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+class ModelLoadMetrics {
+	private final long numBytes;
+	private final long checksumNanos;
+	private final long deserializeNanos;
+	private final long heapUsedBefore;
+	private final long heapUsedAfter;
+
+	ModelLoadMetrics( long numBytes, long checksumNanos, long deserializeNanos, long heapUsedBefore, long heapUsedAfter ) {
+		this.numBytes = numBytes;
+		this.checksumNanos = checksumNanos;
+		this.deserializeNanos = deserializeNanos;
+		this.heapUsedBefore = heapUsedBefore;
+		this.heapUsedAfter = heapUsedAfter;
+	}
+
+	long getNumBytes() {
+		return numBytes;
+	}
+
+	long getChecksumNanos() {
+		return checksumNanos;
+	}
+
+	long getDeserializeNanos() {
+		return deserializeNanos;
+	}
+
+	long getTotalNanos() {
+		return checksumNanos + deserializeNanos;
+	}
+
+	long getHeapUsedBefore() {
+		return heapUsedBefore;
+	}
+
+	long getHeapUsedAfter() {
+		return heapUsedAfter;
+	}
+
+	@Override
+	public String toString() {
+		return "bytes=" + numBytes + ", checksumMillis=" + checksumNanos / 1000000 + ", deserializeMillis=" + deserializeNanos / 1000000 +
+				", heapUsedBefore=" + heapUsedBefore + ", heapUsedAfter=" + heapUsedAfter;
+	}
+}
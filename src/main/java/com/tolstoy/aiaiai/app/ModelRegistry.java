@@ -0,0 +1,333 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.lang.invoke.MethodHandles;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierParams;
+import com.tolstoy.aiaiai.api.IModelRegistry;
+import com.tolstoy.aiaiai.api.IModelStats;
+
+/*
+ * Named models backed by saved model files. A model is loaded on first use as a concurrent builder
+ * and published through a volatile field, so swapping or evicting it never blocks callers already
+ * classifying with the previous builder. When the loaded models exceed the memory budget the least
+ * recently used ones are dropped; they stay registered and are reloaded from their file when next used.
+ * Each model's pool is capped at maxCopiesPerModel copies, and the model is charged for the loaded
+ * prototype plus a full pool: ( 1 + maxCopiesPerModel ) times the bytes allocated while making one copy,
+ * which is an upper bound on a copy's heap footprint, or times the file size if that is larger or the
+ * JVM cannot report allocations.
+ */
+class ModelRegistry implements IModelRegistry {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private final ClassifierBuilderFactory factory;
+	private final long memoryBudget;
+	private final int maxCopiesPerModel;
+	private final ConcurrentMap<String,Entry> entries;
+
+	ModelRegistry( ClassifierBuilderFactory factory, long memoryBudget, int maxCopiesPerModel ) {
+		if ( memoryBudget < 1 ) {
+			throw new IllegalArgumentException( "Memory budget must be positive: " + memoryBudget );
+		}
+
+		if ( maxCopiesPerModel < 1 ) {
+			throw new IllegalArgumentException( "Need at least 1 copy per model: " + maxCopiesPerModel );
+		}
+
+		this.factory = factory;
+		this.memoryBudget = memoryBudget;
+		this.maxCopiesPerModel = maxCopiesPerModel;
+		this.entries = new ConcurrentHashMap<String,Entry>();
+	}
+
+	public void register( String name, File modelFile ) throws Exception {
+		if ( !modelFile.isFile() ) {
+			throw new IllegalArgumentException( "Model file not found: " + modelFile );
+		}
+
+		if ( entries.putIfAbsent( name, new Entry( name, modelFile ) ) != null ) {
+			throw new IllegalArgumentException( "Model already registered: " + name );
+		}
+
+		logger.info( "registered " + name + " from " + modelFile );
+	}
+
+	/*
+	 * Loads the new model before publishing it, so callers switch from the old model to the new one
+	 * without ever seeing an unloaded model. Registers the name if it is new.
+	 */
+	public void swap( String name, File modelFile ) throws Exception {
+		Entry entry = entries.computeIfAbsent( name, key -> new Entry( key, modelFile ) );
+
+		entry.swap( modelFile );
+
+		logger.info( "swapped " + name + " to " + modelFile );
+
+		enforceBudget( entry );
+	}
+
+	public void unregister( String name ) {
+		Entry entry = entries.remove( name );
+		if ( entry != null ) {
+			entry.unload();
+			logger.info( "unregistered " + name );
+		}
+	}
+
+	public Set<String> getModelNames() {
+		return Collections.unmodifiableSet( new TreeSet<String>( entries.keySet() ) );
+	}
+
+	public IClassifierBuilder getClassifierBuilder( String name ) throws Exception {
+		return getBuilder( getEntry( name ) );
+	}
+
+	public String classify( String name, IClassifierParams params ) throws Exception {
+		Entry entry = getEntry( name );
+		IClassifierBuilder builder = getBuilder( entry );
+
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			String ret = builder.classify( params );
+			failed = false;
+			return ret;
+		}
+		finally {
+			entry.stats.recordRequest( System.nanoTime() - start, failed );
+		}
+	}
+
+	public List<String> classifyBatch( String name, List<IClassifierParams> paramsList ) throws Exception {
+		Entry entry = getEntry( name );
+		IClassifierBuilder builder = getBuilder( entry );
+
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			List<String> ret = builder.classifyBatch( paramsList );
+			failed = false;
+			return ret;
+		}
+		finally {
+			entry.stats.recordRequest( System.nanoTime() - start, failed );
+		}
+	}
+
+	public double[] classifyDistribution( String name, IClassifierParams params ) throws Exception {
+		Entry entry = getEntry( name );
+		IClassifierBuilder builder = getBuilder( entry );
+
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			double[] ret = builder.classifyDistribution( params );
+			failed = false;
+			return ret;
+		}
+		finally {
+			entry.stats.recordRequest( System.nanoTime() - start, failed );
+		}
+	}
+
+	public IModelStats getModelStats( String name ) {
+		return getEntry( name ).stats;
+	}
+
+	public long getMemoryUsed() {
+		long ret = 0;
+		for ( Entry entry : entries.values() ) {
+			ret += entry.getLoadedBytes();
+		}
+
+		return ret;
+	}
+
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	int getMaxCopiesPerModel() {
+		return maxCopiesPerModel;
+	}
+
+	protected Entry getEntry( String name ) {
+		Entry ret = entries.get( name );
+		if ( ret == null ) {
+			throw new IllegalArgumentException( "Unknown model: " + name );
+		}
+
+		return ret;
+	}
+
+	protected IClassifierBuilder getBuilder( Entry entry ) throws Exception {
+		entry.lastAccessNanos = System.nanoTime();
+
+		IClassifierBuilder ret = entry.builder;
+		if ( ret != null ) {
+			return ret;
+		}
+
+		ret = entry.load();
+
+		enforceBudget( entry );
+
+		return ret;
+	}
+
+	//	never evicts the model that was just used, even if it alone is over budget
+	protected synchronized void enforceBudget( Entry keep ) {
+		long used = getMemoryUsed();
+		if ( used <= memoryBudget ) {
+			return;
+		}
+
+		List<Entry> loaded = new ArrayList<Entry>();
+		for ( Entry entry : entries.values() ) {
+			if ( entry != keep && entry.builder != null ) {
+				loaded.add( entry );
+			}
+		}
+
+		Collections.sort( loaded, Comparator.comparingLong( entry -> entry.lastAccessNanos ) );
+
+		for ( Entry entry : loaded ) {
+			if ( used <= memoryBudget ) {
+				break;
+			}
+
+			used -= entry.evict();
+		}
+	}
+
+	protected ConcurrentClassifierBuilder loadBuilder( File modelFile ) throws Exception {
+		return factory.loadConcurrentClassifierBuilder( modelFile, maxCopiesPerModel );
+	}
+
+	//	makes the pool's first copy now, so a copy's cost can be measured on this thread
+	protected long estimateBytes( ConcurrentClassifierBuilder builder, File modelFile ) throws Exception {
+		long before = getAllocatedBytes();
+		ClassifierBuilder copy = builder.acquire();
+		long after = getAllocatedBytes();
+		builder.release( copy );
+
+		long copyBytes = modelFile.length();
+		if ( before >= 0 && after >= 0 ) {
+			copyBytes = Math.max( copyBytes, after - before );
+		}
+
+		return copyBytes * ( 1 + maxCopiesPerModel );
+	}
+
+	//	-1 if the JVM cannot report per-thread allocation
+	protected static long getAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if ( !( bean instanceof com.sun.management.ThreadMXBean ) ) {
+			return -1;
+		}
+
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+
+		return threadBean.isThreadAllocatedMemoryEnabled() ? threadBean.getCurrentThreadAllocatedBytes() : -1;
+	}
+
+	@Override
+	public String toString() {
+		return entries.size() + " models, memoryUsed=" + getMemoryUsed() + ", memoryBudget=" + memoryBudget;
+	}
+
+	private final class Entry {
+		private final String name;
+		private final ModelStats stats;
+		private File modelFile;
+		private volatile long loadedBytes;
+		private volatile IClassifierBuilder builder;
+		private volatile long lastAccessNanos;
+
+		Entry( String name, File modelFile ) {
+			this.name = name;
+			this.modelFile = modelFile;
+			this.stats = new ModelStats( name );
+			this.lastAccessNanos = System.nanoTime();
+		}
+
+		synchronized IClassifierBuilder load() throws Exception {
+			if ( builder == null ) {
+				ConcurrentClassifierBuilder newBuilder = loadBuilder( modelFile );
+				long bytes = estimateBytes( newBuilder, modelFile );
+
+				builder = newBuilder;
+				loadedBytes = bytes;
+				stats.recordLoad( bytes );
+
+				logger.info( "loaded " + name + " from " + modelFile );
+			}
+
+			return builder;
+		}
+
+		synchronized void swap( File newModelFile ) throws Exception {
+			ConcurrentClassifierBuilder newBuilder = loadBuilder( newModelFile );
+			long bytes = estimateBytes( newBuilder, newModelFile );
+
+			modelFile = newModelFile;
+			builder = newBuilder;
+			loadedBytes = bytes;
+			stats.recordLoad( bytes );
+		}
+
+		synchronized long evict() {
+			if ( builder == null ) {
+				return 0;
+			}
+
+			long ret = loadedBytes;
+
+			builder = null;
+			loadedBytes = 0;
+			stats.recordEviction();
+
+			logger.info( "evicted " + name + ", freeing about " + ret + " bytes" );
+
+			return ret;
+		}
+
+		synchronized void unload() {
+			builder = null;
+			loadedBytes = 0;
+			stats.recordUnload();
+		}
+
+		long getLoadedBytes() {
+			return loadedBytes;
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.tolstoy.aiaiai.api.IHistogramSnapshot;
+import com.tolstoy.aiaiai.api.IModelStats;
+
+/*
+ * Live counters for one registered model. Request latency goes into the same histogram the factory
+ * metrics use, so tail percentiles are available per model. QPS is an approximate average over the last QPS_WINDOW_SECONDS
+ * complete seconds, using a ring of per-second buckets that are reset lazily when reused.
+ */
+class ModelStats implements IModelStats {
+	static final int QPS_WINDOW_SECONDS = 10;
+
+	private static final int NUM_BUCKETS = QPS_WINDOW_SECONDS + 2;
+
+	private final String name;
+	private final LongAdder numRequests;
+	private final LongAdder numErrors;
+	private final LatencyHistogram latency;
+	private final AtomicLong numLoads;
+	private final AtomicLong numEvictions;
+	private final AtomicLongArray bucketSeconds;
+	private final AtomicLongArray bucketCounts;
+	private volatile boolean loaded;
+	private volatile long estimatedBytes;
+
+	ModelStats( String name ) {
+		this.name = name;
+		this.numRequests = new LongAdder();
+		this.numErrors = new LongAdder();
+		this.latency = new LatencyHistogram();
+		this.numLoads = new AtomicLong();
+		this.numEvictions = new AtomicLong();
+		this.bucketSeconds = new AtomicLongArray( NUM_BUCKETS );
+		this.bucketCounts = new AtomicLongArray( NUM_BUCKETS );
+	}
+
+	void recordRequest( long nanos, boolean failed ) {
+		numRequests.increment();
+		latency.record( nanos );
+		if ( failed ) {
+			numErrors.increment();
+		}
+
+		long second = System.currentTimeMillis() / 1000;
+		int bucket = (int) ( second % NUM_BUCKETS );
+
+		long bucketSecond = bucketSeconds.get( bucket );
+		if ( bucketSecond != second && bucketSeconds.compareAndSet( bucket, bucketSecond, second ) ) {
+			bucketCounts.set( bucket, 0 );
+		}
+
+		bucketCounts.incrementAndGet( bucket );
+	}
+
+	void recordLoad( long bytes ) {
+		numLoads.incrementAndGet();
+		estimatedBytes = bytes;
+		loaded = true;
+	}
+
+	void recordEviction() {
+		numEvictions.incrementAndGet();
+		loaded = false;
+	}
+
+	void recordUnload() {
+		loaded = false;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	public long getEstimatedBytes() {
+		return estimatedBytes;
+	}
+
+	public long getNumLoads() {
+		return numLoads.get();
+	}
+
+	public long getNumEvictions() {
+		return numEvictions.get();
+	}
+
+	public long getNumRequests() {
+		return numRequests.sum();
+	}
+
+	public long getNumErrors() {
+		return numErrors.sum();
+	}
+
+	public double getMeanLatencyMicros() {
+		return latency.snapshot().getMeanNanos() / 1000;
+	}
+
+	public double getMaxLatencyMicros() {
+		return latency.snapshot().getMaxNanos() / 1000.0;
+	}
+
+	public IHistogramSnapshot getLatency() {
+		return latency.snapshot();
+	}
+
+	public double getQps() {
+		long current = System.currentTimeMillis() / 1000;
+		long count = 0;
+
+		for ( int i = 0; i < NUM_BUCKETS; i++ ) {
+			long second = bucketSeconds.get( i );
+			if ( second < current && second >= current - QPS_WINDOW_SECONDS ) {
+				count += bucketCounts.get( i );
+			}
+		}
+
+		return (double) count / QPS_WINDOW_SECONDS;
+	}
+
+	@Override
+	public String toString() {
+		return name + ": loaded=" + loaded + ", bytes=" + estimatedBytes + ", loads=" + numLoads + ", evictions=" + numEvictions +
+				", requests=" + getNumRequests() + ", errors=" + getNumErrors() + ", latency=[" + latency.snapshot() + "], qps=" + String.format( "%.1f", getQps() );
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.util.List;
+
+class ParameterCandidate {
+	private final List<String> classifierArguments;
+	private final List<String> filterArguments;
+	private ClassifierBuilder builder;
+	private double accuracy;
+
+	ParameterCandidate( List<String> classifierArguments, List<String> filterArguments ) {
+		this.classifierArguments = classifierArguments;
+		this.filterArguments = filterArguments;
+	}
+
+	List<String> getClassifierArguments() {
+		return classifierArguments;
+	}
+
+	List<String> getFilterArguments() {
+		return filterArguments;
+	}
+
+	ClassifierBuilder getBuilder() {
+		return builder;
+	}
+
+	double getAccuracy() {
+		return accuracy;
+	}
+
+	void setResult( ClassifierBuilder builder, double accuracy ) {
+		this.builder = builder;
+		this.accuracy = accuracy;
+	}
+
+	@Override
+	public String toString() {
+		return "classifierArguments=" + classifierArguments + ", filterArguments=" + filterArguments + ", accuracy=" + accuracy;
+	}
+}
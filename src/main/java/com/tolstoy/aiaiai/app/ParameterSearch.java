@@ -0,0 +1,194 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.File;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.lang.invoke.MethodHandles;
+
+import weka.core.Instances;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.tolstoy.aiaiai.api.IParameterSearch;
+import com.tolstoy.aiaiai.api.IParameterSearchResult;
+
+/*
+ * Successive halving: every candidate is first trained on a small slice of the training data,
+ * and only the best 1/REDUCTION_FACTOR of them move on to a slice REDUCTION_FACTOR times larger.
+ * The last rung trains the survivors on the whole training split.
+ */
+class ParameterSearch implements IParameterSearch {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private static final int REDUCTION_FACTOR = 3;
+
+	private final ClassifierBuilderFactory factory;
+	private final String classifierName;
+	private final Map<String,List<String>> classifierSearchSpace;
+	private final String filterName;
+	private final Map<String,List<String>> filterSearchSpace;
+
+	ParameterSearch( ClassifierBuilderFactory factory, String classifierName, Map<String,List<String>> classifierSearchSpace, String filterName, Map<String,List<String>> filterSearchSpace ) {
+		this.factory = factory;
+		this.classifierName = classifierName;
+		this.classifierSearchSpace = classifierSearchSpace;
+		this.filterName = filterName;
+		this.filterSearchSpace = filterSearchSpace;
+	}
+
+	public IParameterSearchResult search( File inputFile, int maxCandidates, double holdoutFraction, long seed ) throws Exception {
+		return search( inputFile, maxCandidates, holdoutFraction, seed, ForkJoinPool.commonPool() );
+	}
+
+	public IParameterSearchResult search( File inputFile, int maxCandidates, double holdoutFraction, long seed, ExecutorService executor ) throws Exception {
+		if ( maxCandidates < 1 ) {
+			throw new IllegalArgumentException( "maxCandidates must be at least 1 but is " + maxCandidates );
+		}
+
+		//	written so that NaN is rejected too
+		if ( !( holdoutFraction > 0 && holdoutFraction < 1 ) ) {
+			throw new IllegalArgumentException( "Holdout fraction must be between 0 and 1: " + holdoutFraction );
+		}
+
+		Random random = new Random( seed );
+
+		List<ParameterCandidate> candidates = createCandidates( maxCandidates, random );
+		int numCandidates = candidates.size();
+
+		Instances data = new Instances( factory.readInstances( inputFile ) );
+		data.randomize( random );
+
+		int numHoldout = Math.max( 1, (int) Math.round( data.numInstances() * holdoutFraction ) );
+		Instances train = new Instances( data, 0, data.numInstances() - numHoldout );
+		Instances holdout = new Instances( data, data.numInstances() - numHoldout, numHoldout );
+
+		int numRungs = 1;
+		for ( int remaining = numCandidates; remaining > REDUCTION_FACTOR; remaining = ( remaining + REDUCTION_FACTOR - 1 ) / REDUCTION_FACTOR ) {
+			numRungs++;
+		}
+
+		int numTrainings = 0;
+
+		for ( int rung = 0; rung < numRungs; rung++ ) {
+			int size = (int) Math.max( Math.min( train.numInstances(), 2 * train.numClasses() ), train.numInstances() / Math.pow( REDUCTION_FACTOR, numRungs - 1 - rung ) );
+			Instances subset = size < train.numInstances() ? new Instances( train, 0, size ) : train;
+
+			List<Callable<ParameterCandidate>> tasks = new ArrayList<Callable<ParameterCandidate>>( candidates.size() );
+			for ( ParameterCandidate candidate : candidates ) {
+				tasks.add( () -> evaluate( candidate, subset, holdout ) );
+			}
+
+			for ( Future<ParameterCandidate> future : executor.invokeAll( tasks ) ) {
+				future.get();
+			}
+
+			numTrainings += candidates.size();
+
+			Collections.sort( candidates, Comparator.comparingDouble( ParameterCandidate::getAccuracy ).reversed() );
+
+			logger.info( "rung " + rung + ": " + candidates.size() + " candidates on " + size + " instances, best=" + candidates.get( 0 ) );
+
+			if ( rung < numRungs - 1 ) {
+				int numKept = Math.max( 1, ( candidates.size() + REDUCTION_FACTOR - 1 ) / REDUCTION_FACTOR );
+				candidates = new ArrayList<ParameterCandidate>( candidates.subList( 0, numKept ) );
+			}
+		}
+
+		IParameterSearchResult ret = new ParameterSearchResult( candidates.get( 0 ), numCandidates, numTrainings );
+
+		logger.info( "parameter search for " + classifierName + " on " + inputFile + ": " + ret );
+
+		return ret;
+	}
+
+	protected ParameterCandidate evaluate( ParameterCandidate candidate, Instances train, Instances holdout ) throws Exception {
+		//	candidates already run in parallel, so each ensemble trains on one slot
+		ClassifierBuilder builder = factory.trainClassifierBuilder( classifierName, candidate.getClassifierArguments(), filterName, candidate.getFilterArguments(), train, 1 );
+
+		PredictionCounter counter = new PredictionCounter( builder, holdout );
+		counter.addAll( holdout );
+
+		int[][] counts = counter.getCounts();
+		long correct = 0, total = 0;
+		for ( int expected = 0; expected < counts.length; expected++ ) {
+			for ( int actual = 0; actual < counts.length; actual++ ) {
+				total += counts[ expected ][ actual ];
+			}
+			correct += counts[ expected ][ expected ];
+		}
+
+		candidate.setResult( builder, total > 0 ? (double) correct / total : 0 );
+
+		return candidate;
+	}
+
+	protected List<ParameterCandidate> createCandidates( int maxCandidates, Random random ) {
+		List<List<String>> classifierGrid = expand( classifierSearchSpace );
+		List<List<String>> filterGrid = expand( filterSearchSpace );
+
+		List<ParameterCandidate> ret = new ArrayList<ParameterCandidate>();
+		for ( List<String> classifierArguments : classifierGrid ) {
+			for ( List<String> filterArguments : filterGrid ) {
+				ret.add( new ParameterCandidate( classifierArguments, filterArguments ) );
+			}
+		}
+
+		if ( ret.size() > maxCandidates ) {
+			Collections.shuffle( ret, random );
+			ret = new ArrayList<ParameterCandidate>( ret.subList( 0, maxCandidates ) );
+		}
+
+		return ret;
+	}
+
+	//	an empty value adds the option on its own, for flags like J48's -U
+	protected List<List<String>> expand( Map<String,List<String>> searchSpace ) {
+		List<List<String>> ret = new ArrayList<List<String>>();
+		ret.add( new ArrayList<String>() );
+
+		if ( searchSpace == null ) {
+			return ret;
+		}
+
+		for ( Map.Entry<String,List<String>> entry : searchSpace.entrySet() ) {
+			List<List<String>> expanded = new ArrayList<List<String>>();
+
+			for ( List<String> prefix : ret ) {
+				for ( String value : entry.getValue() ) {
+					List<String> arguments = new ArrayList<String>( prefix );
+					arguments.add( entry.getKey() );
+					if ( !value.isEmpty() ) {
+						arguments.add( value );
+					}
+					expanded.add( arguments );
+				}
+			}
+
+			ret = expanded;
+		}
+
+		return ret;
+	}
+}
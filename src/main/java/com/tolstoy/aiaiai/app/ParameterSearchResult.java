@@ -0,0 +1,61 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.util.List;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IParameterSearchResult;
+
+class ParameterSearchResult implements IParameterSearchResult {
+	private final ParameterCandidate best;
+	private final int numCandidates;
+	private final int numTrainings;
+
+	ParameterSearchResult( ParameterCandidate best, int numCandidates, int numTrainings ) {
+		this.best = best;
+		this.numCandidates = numCandidates;
+		this.numTrainings = numTrainings;
+	}
+
+	public IClassifierBuilder getBestBuilder() {
+		return best.getBuilder();
+	}
+
+	public List<String> getBestClassifierArguments() {
+		return best.getClassifierArguments();
+	}
+
+	public List<String> getBestFilterArguments() {
+		return best.getFilterArguments();
+	}
+
+	public double getBestAccuracy() {
+		return best.getAccuracy();
+	}
+
+	public int getNumCandidates() {
+		return numCandidates;
+	}
+
+	public int getNumTrainings() {
+		return numTrainings;
+	}
+
+	@Override
+	public String toString() {
+		return "best: " + best + ", candidates=" + numCandidates + ", trainings=" + numTrainings;
+	}
+}
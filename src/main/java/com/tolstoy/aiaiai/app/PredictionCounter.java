@@ -0,0 +1,96 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+import java.lang.invoke.MethodHandles;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IPrimitiveClassifierParams;
+
+class PredictionCounter {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private final IClassifierBuilder builder;
+	private final IPrimitiveClassifierParams params;
+	private final Attribute[] valueAttributes;
+	private final int[] indexes;
+	private final List<String> classAttributeOptions;
+	private final Map<String,Integer> classIndexes;
+	private final int[][] counts;
+
+	PredictionCounter( IClassifierBuilder builder, Instances structure ) {
+		InstancesHelper helper = new InstancesHelper( structure );
+
+		List<Attribute> tempValueAttributes = helper.getValueAttributes();
+
+		this.builder = builder;
+		this.params = builder.createPrimitiveClassifierParams();
+		this.valueAttributes = tempValueAttributes.toArray( new Attribute[ 0 ] );
+		this.indexes = new int[ valueAttributes.length ];
+		for ( int i = 0; i < indexes.length; i++ ) {
+			indexes[ i ] = params.getIndex( valueAttributes[ i ].name() );
+		}
+
+		this.classAttributeOptions = helper.getClassAttributeOptions();
+		this.classIndexes = new HashMap<String,Integer>();
+		for ( int i = 0; i < classAttributeOptions.size(); i++ ) {
+			classIndexes.put( classAttributeOptions.get( i ), i );
+		}
+
+		this.counts = new int[ classAttributeOptions.size() ][ classAttributeOptions.size() ];
+	}
+
+	void add( Instance instance ) throws Exception {
+		if ( instance.classIsMissing() ) {
+			return;
+		}
+
+		for ( int i = 0; i < indexes.length; i++ ) {
+			params.setValue( indexes[ i ], instance.value( valueAttributes[ i ] ) );
+		}
+
+		String actual = builder.classify( params );
+
+		Integer actualIndex = classIndexes.get( actual );
+		if ( actualIndex == null ) {
+			throw new IllegalStateException( "Classifier predicted " + actual + ", which is not one of the classes " + classAttributeOptions );
+		}
+
+		counts[ (int) instance.classValue() ][ actualIndex ]++;
+	}
+
+	void addAll( Instances instances ) throws Exception {
+		for ( Instance instance : instances ) {
+			add( instance );
+		}
+	}
+
+	List<String> getClassAttributeOptions() {
+		return classAttributeOptions;
+	}
+
+	int[][] getCounts() {
+		return counts;
+	}
+}
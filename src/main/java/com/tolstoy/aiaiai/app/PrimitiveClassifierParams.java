@@ -0,0 +1,135 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.BitSet;
+import java.lang.invoke.MethodHandles;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.tolstoy.aiaiai.api.IPrimitiveClassifierParams;
+import com.tolstoy.aiaiai.api.AttributeNotSetException;
+
+class PrimitiveClassifierParams implements IPrimitiveClassifierParams {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private final Map<String,Integer> indexes;
+	private final String[] keys;
+	private final int[] attributeIndexes;
+	private final double[] values;
+	private final BitSet set;
+	private final int maxValueAttributeIndex;
+
+	PrimitiveClassifierParams( Map<String,Integer> indexes, String[] keys, int[] attributeIndexes ) {
+		this.indexes = indexes;
+		this.keys = keys;
+		this.attributeIndexes = attributeIndexes;
+		this.values = new double[ keys.length ];
+		this.set = new BitSet( keys.length );
+
+		int max = -1;
+		for ( int attributeIndex : attributeIndexes ) {
+			max = Math.max( max, attributeIndex );
+		}
+
+		this.maxValueAttributeIndex = max;
+	}
+
+	public List<Double> getList() throws AttributeNotSetException {
+		checkAllSet();
+
+		List<Double> ret = new ArrayList<Double>( maxValueAttributeIndex + 1 );
+		for ( int i = 0; i < maxValueAttributeIndex + 1; i++ ) {
+			ret.add( null );
+		}
+		for ( int i = 0; i < values.length; i++ ) {
+			ret.set( attributeIndexes[ i ], values[ i ] );
+		}
+
+		return ret;
+	}
+
+	public int getIndex( String key ) {
+		Integer index = indexes.get( key );
+		if ( index == null ) {
+			throw new IllegalArgumentException( "Key is not valid: " + key );
+		}
+
+		return index;
+	}
+
+	public Double getValue( String key ) {
+		int index = getIndex( key );
+
+		return set.get( index ) ? values[ index ] : null;
+	}
+
+	public void setValue( String key, Double value ) {
+		int index = getIndex( key );
+
+		if ( value == null ) {
+			set.clear( index );
+		}
+		else {
+			setValue( index, value.doubleValue() );
+		}
+	}
+
+	public double getValue( int index ) {
+		return values[ index ];
+	}
+
+	public void setValue( int index, double value ) {
+		values[ index ] = value;
+		set.set( index );
+	}
+
+	public boolean isSet( int index ) {
+		return set.get( index );
+	}
+
+	public void clear() {
+		set.clear();
+	}
+
+	void copyValues( double[] attrValuesArray ) throws AttributeNotSetException {
+		checkAllSet();
+
+		for ( int i = 0; i < values.length; i++ ) {
+			attrValuesArray[ attributeIndexes[ i ] ] = values[ i ];
+		}
+	}
+
+	protected void checkAllSet() throws AttributeNotSetException {
+		int unset = set.nextClearBit( 0 );
+		if ( unset < values.length ) {
+			throw new AttributeNotSetException( keys[ unset ] );
+		}
+	}
+
+	@Override
+	public String toString() {
+		List<String> components = new ArrayList<String>( keys.length );
+		for ( int i = 0; i < keys.length; i++ ) {
+			components.add( keys[ i ] + "=" + ( set.get( i ) ? values[ i ] : null ) );
+		}
+
+		return "values=" + components + ", maxValueAttributeIndex=" + maxValueAttributeIndex;
+	}
+}
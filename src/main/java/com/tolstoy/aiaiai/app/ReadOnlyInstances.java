@@ -0,0 +1,207 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.Reader;
+import java.util.Random;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/*
+ * Instances that DatasetCache hands to every reader of a file: the header and the row list cannot be
+ * changed, so one caller cannot reorder, delete or relabel rows under another. The rows themselves are
+ * shared rather than copied; new Instances( instances ) gives an ordinary copy that may be modified.
+ */
+class ReadOnlyInstances extends Instances {
+	private static final long serialVersionUID = 1L;
+
+	ReadOnlyInstances( Instances source ) {
+		super( source, source.numInstances() );
+
+		for ( Instance instance : source ) {
+			instance.setDataset( this );
+			m_Instances.add( instance );
+		}
+	}
+
+	@Override
+	public boolean add( Instance instance ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void add( int index, Instance instance ) {
+		throw readOnly();
+	}
+
+	@Override
+	public Instance set( int index, Instance instance ) {
+		throw readOnly();
+	}
+
+	@Override
+	public Instance remove( int index ) {
+		throw readOnly();
+	}
+
+	@Override
+	public boolean readInstance( Reader reader ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void compactify() {
+		throw readOnly();
+	}
+
+	@Override
+	public void delete() {
+		throw readOnly();
+	}
+
+	@Override
+	public void delete( int index ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void deleteAttributeAt( int position ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void deleteAttributeType( int attType ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void deleteStringAttributes() {
+		throw readOnly();
+	}
+
+	@Override
+	public void deleteWithMissing( int attIndex ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void deleteWithMissing( Attribute att ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void deleteWithMissingClass() {
+		throw readOnly();
+	}
+
+	@Override
+	public void insertAttributeAt( Attribute att, int position ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void replaceAttributeAt( Attribute att, int position ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void randomize( Random random ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void renameAttribute( int att, String name ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void renameAttribute( Attribute att, String name ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void renameAttributeValue( int att, int val, String name ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void renameAttributeValue( Attribute att, String val, String name ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void setAttributeWeight( int att, double weight ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void setAttributeWeight( Attribute att, double weight ) {
+		throw readOnly();
+	}
+
+	//	setting the class index it already has is allowed, since Weka code often does that defensively
+	@Override
+	public void setClassIndex( int classIndex ) {
+		if ( classIndex != classIndex() ) {
+			throw readOnly();
+		}
+	}
+
+	@Override
+	public void setClass( Attribute att ) {
+		setClassIndex( att.index() );
+	}
+
+	@Override
+	public void setRelationName( String newName ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void sort( int attIndex ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void sort( Attribute att ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void stableSort( int attIndex ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void stableSort( Attribute att ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void stratify( int numFolds ) {
+		throw readOnly();
+	}
+
+	@Override
+	public void swap( int i, int j ) {
+		throw readOnly();
+	}
+
+	private static UnsupportedOperationException readOnly() {
+		return new UnsupportedOperationException( "Cached instances are shared and read-only; copy them with new Instances( instances ) first" );
+	}
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierParams;
+import com.tolstoy.aiaiai.api.IScoringServer;
+import com.tolstoy.aiaiai.api.AttributeNotSetException;
+
+/*
+ * A small HTTP front end for one classifier builder, built on the JDK's HttpServer.
+ *
+ *   POST /classify    body is attribute=value pairs, form encoded; the response is the predicted label
+ *   GET  /metrics     the factory's metrics, one "name value" line each
+ *   GET  /health      "ok"
+ *
+ * Each request runs on a thread from a bounded pool and waits on the MicroBatcher, which classifies
+ * the requests in batches. When every thread is busy and the pool's queue is full, /classify gets a
+ * 503 right away, answered on the server's dispatcher thread. The server binds to the loopback
+ * address unless it is given another one.
+ */
+class ScoringServer implements IScoringServer {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private static final int QUEUE_CAPACITY_PER_BATCH = 64;
+	private static final long REQUEST_TIMEOUT_MILLIS = 5000;
+	private static final int REQUEST_THREADS_PER_BATCH = 4;
+
+	//	set while a request the pool rejected runs on the dispatcher thread
+	private static final ThreadLocal<Boolean> saturated = ThreadLocal.withInitial( () -> Boolean.FALSE );
+
+	private final IClassifierBuilder builder;
+	private final InetAddress bindAddress;
+	private final int requestedPort;
+	private final int maxRequestThreads;
+	private final int maxQueuedRequests;
+	private final MicroBatcher batcher;
+	private final Metrics metrics;
+	private final AtomicLong numRequests;
+	private final AtomicLong numBusy;
+	private HttpServer server;
+	private ThreadPoolExecutor executor;
+
+	ScoringServer( IClassifierBuilder builder, InetAddress bindAddress, int port, int maxBatchSize, long maxWaitMicros, Metrics metrics ) {
+		this( builder, bindAddress, port, maxBatchSize, maxWaitMicros, maxBatchSize * REQUEST_THREADS_PER_BATCH, maxBatchSize * QUEUE_CAPACITY_PER_BATCH, metrics );
+	}
+
+	ScoringServer( IClassifierBuilder builder, InetAddress bindAddress, int port, int maxBatchSize, long maxWaitMicros,
+					int maxRequestThreads, int maxQueuedRequests, Metrics metrics ) {
+		if ( maxRequestThreads < 1 || maxQueuedRequests < 1 ) {
+			throw new IllegalArgumentException( "maxRequestThreads and maxQueuedRequests must be at least 1 but are " + maxRequestThreads + " and " + maxQueuedRequests );
+		}
+
+		this.builder = builder;
+		this.bindAddress = bindAddress;
+		this.requestedPort = port;
+		this.maxRequestThreads = maxRequestThreads;
+		this.maxQueuedRequests = maxQueuedRequests;
+		this.metrics = metrics;
+		this.batcher = new MicroBatcher( builder, maxBatchSize, maxWaitMicros, maxBatchSize * QUEUE_CAPACITY_PER_BATCH, metrics );
+		this.numRequests = new AtomicLong();
+		this.numBusy = new AtomicLong();
+	}
+
+	@Override
+	public synchronized void start() throws IOException {
+		if ( server != null ) {
+			throw new IllegalStateException( "Server already started" );
+		}
+
+		executor = createRequestExecutor( maxRequestThreads, maxQueuedRequests );
+
+		server = HttpServer.create( new InetSocketAddress( bindAddress, requestedPort ), 0 );
+		server.setExecutor( executor );
+		server.createContext( "/classify", this::handleClassify );
+		server.createContext( "/metrics", this::handleMetrics );
+		server.createContext( "/health", exchange -> respond( exchange, 200, "ok" ) );
+
+		batcher.start();
+		server.start();
+
+		logger.info( "scoring server listening on " + bindAddress.getHostAddress() + ":" + getPort() );
+	}
+
+	@Override
+	public synchronized void stop() {
+		if ( server == null ) {
+			return;
+		}
+
+		server.stop( 0 );
+		batcher.stop();
+		executor.shutdown();
+
+		server = null;
+		executor = null;
+	}
+
+	@Override
+	public synchronized int getPort() {
+		return server != null ? server.getAddress().getPort() : requestedPort;
+	}
+
+	@Override
+	public long getNumRequests() {
+		return numRequests.get();
+	}
+
+	@Override
+	public long getNumBatches() {
+		return batcher.getNumBatches();
+	}
+
+	@Override
+	public long getNumRejected() {
+		return batcher.getNumRejected() + numBusy.get();
+	}
+
+	protected void handleClassify( HttpExchange exchange ) throws IOException {
+		long start = metrics.start();
+		numRequests.incrementAndGet();
+
+		try {
+			if ( saturated.get() ) {
+				numBusy.incrementAndGet();
+				metrics.increment( Metrics.Counter.SERVER_REJECTED );
+				respond( exchange, 503, "Server busy" );
+				return;
+			}
+
+			if ( !"POST".equals( exchange.getRequestMethod() ) ) {
+				respond( exchange, 405, "POST required" );
+				return;
+			}
+
+			IClassifierParams params;
+			try {
+				params = parseParams( readBody( exchange ) );
+			}
+			catch ( IllegalArgumentException e ) {
+				respond( exchange, 400, e.getMessage() );
+				return;
+			}
+
+			CompletableFuture<String> future = batcher.submit( params );
+
+			try {
+				respond( exchange, 200, future.get( REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS ) );
+			}
+			catch ( ExecutionException e ) {
+				Throwable cause = e.getCause();
+				if ( cause instanceof RejectedExecutionException ) {
+					respond( exchange, 503, cause.getMessage() );
+				}
+				else if ( cause instanceof AttributeNotSetException || cause instanceof IllegalArgumentException ) {
+					respond( exchange, 400, cause.getMessage() );
+				}
+				else {
+					logger.error( "classification failed", cause );
+					respond( exchange, 500, String.valueOf( cause ) );
+				}
+			}
+			catch ( TimeoutException e ) {
+				//	so the dispatcher drops the request instead of spending batch capacity on it
+				future.cancel( false );
+				respond( exchange, 504, "Timed out" );
+			}
+			catch ( InterruptedException e ) {
+				future.cancel( false );
+				Thread.currentThread().interrupt();
+				respond( exchange, 503, "Interrupted" );
+			}
+		}
+		finally {
+			metrics.record( Metrics.Stage.SERVER_REQUEST, start );
+		}
+	}
+
+	protected void handleMetrics( HttpExchange exchange ) throws IOException {
+		StringBuilder sb = new StringBuilder();
+
+		for ( Map.Entry<String,Double> entry : Metrics.flatten( metrics ).entrySet() ) {
+			sb.append( entry.getKey() ).append( ' ' ).append( entry.getValue() ).append( '\n' );
+		}
+
+		respond( exchange, 200, sb.toString() );
+	}
+
+	protected IClassifierParams parseParams( String body ) {
+		IClassifierParams params = builder.createClassifierParams();
+
+		for ( String pair : body.split( "[&\n]" ) ) {
+			pair = pair.trim();
+			if ( pair.isEmpty() ) {
+				continue;
+			}
+
+			int index = pair.indexOf( '=' );
+			if ( index < 1 ) {
+				throw new IllegalArgumentException( "Expected attribute=value but got " + pair );
+			}
+
+			String key = URLDecoder.decode( pair.substring( 0, index ), StandardCharsets.UTF_8 );
+			String value = URLDecoder.decode( pair.substring( index + 1 ), StandardCharsets.UTF_8 );
+
+			try {
+				params.setValue( key, Double.valueOf( value ) );
+			}
+			catch ( NumberFormatException e ) {
+				throw new IllegalArgumentException( "Bad value for " + key + ": " + value );
+			}
+		}
+
+		return params;
+	}
+
+	protected static String readBody( HttpExchange exchange ) throws IOException {
+		try ( InputStream in = exchange.getRequestBody() ) {
+			return new String( in.readAllBytes(), StandardCharsets.UTF_8 );
+		}
+	}
+
+	protected static void respond( HttpExchange exchange, int status, String body ) throws IOException {
+		byte[] bytes = ( body != null ? body : "" ).getBytes( StandardCharsets.UTF_8 );
+
+		exchange.getResponseHeaders().set( "Content-Type", "text/plain; charset=utf-8" );
+		exchange.sendResponseHeaders( status, bytes.length );
+
+		try ( OutputStream out = exchange.getResponseBody() ) {
+			out.write( bytes );
+		}
+	}
+
+	/*
+	 * HttpServer does not handle an executor that throws, so a request the pool cannot take runs on
+	 * the dispatcher thread instead, flagged so that /classify answers 503 without waiting on the batcher.
+	 */
+	static ThreadPoolExecutor createRequestExecutor( int maxThreads, int maxQueued ) {
+		ThreadPoolExecutor ret = new ThreadPoolExecutor( maxThreads, maxThreads, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>( maxQueued ),
+			runnable -> {
+				Thread thread = new Thread( runnable, "scoring-server" );
+				thread.setDaemon( true );
+				return thread;
+			},
+			( runnable, pool ) -> {
+				saturated.set( Boolean.TRUE );
+				try {
+					runnable.run();
+				}
+				finally {
+					saturated.set( Boolean.FALSE );
+				}
+			} );
+
+		ret.allowCoreThreadTimeOut( true );
+
+		return ret;
+	}
+}
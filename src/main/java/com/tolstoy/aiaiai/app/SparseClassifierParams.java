@@ -0,0 +1,220 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.lang.invoke.MethodHandles;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.tolstoy.aiaiai.api.ISparseClassifierParams;
+
+/*
+ * Values are appended as (index, value) pairs. The pairs are sorted and deduplicated only when they
+ * are read, and the last write to an index wins. Setting the values in index order never needs a sort.
+ */
+class SparseClassifierParams implements ISparseClassifierParams {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final Map<String,Integer> indexes;
+	private final String[] keys;
+	private final int[] attributeIndexes;
+	private final int maxValueAttributeIndex;
+	private int[] slots;
+	private double[] values;
+	private int size;
+	private boolean sorted;
+
+	SparseClassifierParams( Map<String,Integer> indexes, String[] keys, int[] attributeIndexes ) {
+		this.indexes = indexes;
+		this.keys = keys;
+		this.attributeIndexes = attributeIndexes;
+		this.slots = new int[ INITIAL_CAPACITY ];
+		this.values = new double[ INITIAL_CAPACITY ];
+		this.size = 0;
+		this.sorted = true;
+
+		int max = -1;
+		for ( int attributeIndex : attributeIndexes ) {
+			max = Math.max( max, attributeIndex );
+		}
+
+		this.maxValueAttributeIndex = max;
+	}
+
+	//	dense, for callers that need every value; prefer the sparse accessors
+	public List<Double> getList() {
+		double[] dense = new double[ maxValueAttributeIndex + 1 ];
+		copyValues( dense );
+
+		List<Double> ret = new ArrayList<Double>( dense.length );
+		for ( double value : dense ) {
+			ret.add( value );
+		}
+
+		return ret;
+	}
+
+	public int getIndex( String key ) {
+		Integer index = indexes.get( key );
+		if ( index == null ) {
+			throw new IllegalArgumentException( "Key is not valid: " + key );
+		}
+
+		return index;
+	}
+
+	public Double getValue( String key ) {
+		return getValue( getIndex( key ) );
+	}
+
+	public void setValue( String key, Double value ) {
+		setValue( getIndex( key ), value != null ? value.doubleValue() : 0 );
+	}
+
+	//	scans the pairs from the most recent, so reading is O(non-zeros)
+	public double getValue( int index ) {
+		checkIndex( index );
+
+		for ( int i = size - 1; i >= 0; i-- ) {
+			if ( slots[ i ] == index ) {
+				return values[ i ];
+			}
+		}
+
+		return 0;
+	}
+
+	public void setValue( int index, double value ) {
+		checkIndex( index );
+
+		if ( size == slots.length ) {
+			slots = Arrays.copyOf( slots, size * 2 );
+			values = Arrays.copyOf( values, size * 2 );
+		}
+
+		if ( size > 0 && slots[ size - 1 ] >= index ) {
+			sorted = false;
+		}
+
+		slots[ size ] = index;
+		values[ size ] = value;
+		size++;
+	}
+
+	public int getNumNonZero() {
+		compact();
+
+		int ret = 0;
+		for ( int i = 0; i < size; i++ ) {
+			if ( values[ i ] != 0 ) {
+				ret++;
+			}
+		}
+
+		return ret;
+	}
+
+	public void clear() {
+		size = 0;
+		sorted = true;
+	}
+
+	/*
+	 * After this, slots[0..size) are strictly increasing and each slot has its latest value. The values
+	 * may still include explicit zeros, which the caller should skip.
+	 */
+	void compact() {
+		if ( sorted ) {
+			return;
+		}
+
+		long[] order = new long[ size ];
+		for ( int i = 0; i < size; i++ ) {
+			order[ i ] = ( (long) slots[ i ] << 32 ) | i;
+		}
+
+		Arrays.sort( order );
+
+		int[] newSlots = new int[ Math.max( size, INITIAL_CAPACITY ) ];
+		double[] newValues = new double[ newSlots.length ];
+		int newSize = 0;
+
+		for ( int i = 0; i < size; i++ ) {
+			int slot = (int) ( order[ i ] >>> 32 );
+			double value = values[ (int) order[ i ] ];
+
+			if ( newSize > 0 && newSlots[ newSize - 1 ] == slot ) {
+				newValues[ newSize - 1 ] = value;
+			}
+			else {
+				newSlots[ newSize ] = slot;
+				newValues[ newSize ] = value;
+				newSize++;
+			}
+		}
+
+		slots = newSlots;
+		values = newValues;
+		size = newSize;
+		sorted = true;
+	}
+
+	int size() {
+		return size;
+	}
+
+	//	attribute positions rise with the index, so after compact() these are in ascending order
+	int getAttributeIndex( int i ) {
+		return attributeIndexes[ slots[ i ] ];
+	}
+
+	double getValueAt( int i ) {
+		return values[ i ];
+	}
+
+	//	dense copy into an array indexed by attribute position
+	void copyValues( double[] attrValuesArray ) {
+		compact();
+
+		for ( int i = 0; i < size; i++ ) {
+			attrValuesArray[ attributeIndexes[ slots[ i ] ] ] = values[ i ];
+		}
+	}
+
+	protected void checkIndex( int index ) {
+		if ( index < 0 || index >= keys.length ) {
+			throw new IllegalArgumentException( "Index is not valid: " + index );
+		}
+	}
+
+	@Override
+	public String toString() {
+		compact();
+
+		List<String> components = new ArrayList<String>( size );
+		for ( int i = 0; i < size; i++ ) {
+			components.add( keys[ slots[ i ] ] + "=" + values[ i ] );
+		}
+
+		return "values=" + components + ", maxValueAttributeIndex=" + maxValueAttributeIndex;
+	}
+}
@@ -0,0 +1,25 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+/*
+ * A keyed instance read from a sparse row. It holds only the non-zero values. Every attribute not in
+ * getKeys() is 0, not missing.
+ */
+class SparseKeyedInstance<C,V> extends KeyedInstance<C,V> {
+	SparseKeyedInstance() throws Exception {
+		super();
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import com.tolstoy.aiaiai.api.ICachingClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierParams;
+import com.tolstoy.aiaiai.api.IKeyedInstance;
+
+public class CachingClassifierBuilderTest {
+	@Test
+	public void repeatedVectorsAreServedFromCache() throws Exception {
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+
+		IClassifierBuilder<Double> builder = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																				ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, inputFile );
+		ICachingClassifierBuilder<Double> caching = factory.createCachingClassifierBuilder( builder, 1000, 0 );
+
+		Instances instances = factory.readInstances( inputFile );
+		List<String> expected = ClassifierBuilderTest.classifyAll( builder, instances );
+
+		assertEquals( expected, ClassifierBuilderTest.classifyAll( caching, instances ) );
+		assertEquals( expected, ClassifierBuilderTest.classifyAll( caching, instances ) );
+
+		int numDistinct = countDistinctVectors( instances );
+
+		assertEquals( numDistinct, caching.getMisses() );
+		assertEquals( 2 * instances.numInstances() - numDistinct, caching.getHits() );
+		assertEquals( numDistinct, caching.size() );
+		assertTrue( caching.getHitRate() > 0.5 );
+
+		List<IClassifierParams<Double>> paramsList = new ArrayList<IClassifierParams<Double>>();
+		for ( Instance instance : instances ) {
+			paramsList.add( createParams( caching, instance ) );
+		}
+
+		assertEquals( expected, caching.classifyBatch( paramsList ) );
+		assertEquals( numDistinct, caching.getMisses() );
+	}
+
+	@Test
+	public void updateClearsCache() throws Exception {
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+
+		IClassifierBuilder<Double> builder = factory.createConcurrentClassifierBuilder( "weka.classifiers.bayes.NaiveBayesUpdateable", null, null, null, inputFile );
+		ICachingClassifierBuilder<Double> caching = factory.createCachingClassifierBuilder( builder, 1000, 0 );
+
+		Instances instances = factory.readInstances( inputFile );
+		ClassifierBuilderTest.classifyAll( caching, instances );
+
+		List<IKeyedInstance<String,Double>> keyedInstances = factory.createKeyedInstanceSet( inputFile ).getKeyedInstances();
+		for ( int i = 0; i < 3; i++ ) {
+			builder.updateBatch( keyedInstances );
+		}
+
+		long misses = caching.getMisses();
+
+		assertEquals( ClassifierBuilderTest.classifyAll( builder, instances ), ClassifierBuilderTest.classifyAll( caching, instances ) );
+		assertEquals( misses + countDistinctVectors( instances ), caching.getMisses() );
+	}
+
+	@Test
+	public void cacheIsBoundedAndExpires() throws Exception {
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+
+		IClassifierBuilder<Double> builder = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, null, null, null, inputFile );
+		Instances instances = factory.readInstances( inputFile );
+
+		ICachingClassifierBuilder<Double> small = factory.createCachingClassifierBuilder( builder, 32, 0 );
+		ClassifierBuilderTest.classifyAll( small, instances );
+
+		assertTrue( small.size() <= 32 );
+		assertEquals( small.getMisses() - small.size(), small.getEvictions() );
+
+		ICachingClassifierBuilder<Double> expiring = factory.createCachingClassifierBuilder( builder, 1000, 1 );
+		ClassifierBuilderTest.classifyAll( expiring, instances );
+		long hits = expiring.getHits();
+
+		Thread.sleep( 10 );
+		ClassifierBuilderTest.classifyAll( expiring, new Instances( instances, 0, 1 ) );
+
+		assertEquals( hits, expiring.getHits() );
+	}
+
+	private static int countDistinctVectors( Instances instances ) {
+		Set<String> ret = new HashSet<String>();
+		for ( Instance instance : instances ) {
+			ret.add( instance.toString() );
+		}
+
+		return ret.size();
+	}
+
+	private static IClassifierParams<Double> createParams( IClassifierBuilder<Double> builder, Instance instance ) {
+		IClassifierParams<Double> ret = builder.createClassifierParams();
+		for ( int i = 0; i < instance.numAttributes() - 1; i++ ) {
+			ret.setValue( instance.attribute( i ).name(), instance.value( i ) );
+		}
+
+		return ret;
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+import weka.core.Instances;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IConfidenceMatrix;
+import com.tolstoy.aiaiai.api.ICrossValidator;
+import com.tolstoy.aiaiai.api.ICrossValidationResult;
+import com.tolstoy.aiaiai.api.IParameterSearch;
+import com.tolstoy.aiaiai.api.IParameterSearchResult;
+import com.tolstoy.aiaiai.api.ClassifierNotUpdateableException;
+
+public class ClassifierBuilderFactoryTest {
+	private static final String UPDATEABLE_CLASSIFIER_NAME = "weka.classifiers.bayes.NaiveBayesUpdateable";
+	private static final String FOREST_CLASSIFIER_NAME = "weka.classifiers.trees.RandomForest";
+
+	@Test
+	public void evaluateCountsEveryRow() throws Exception {
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		IClassifierBuilder builder = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																		ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, ClassifierBuilderTest.getIrisFile() );
+
+		IConfidenceMatrix matrix = factory.evaluate( builder, ClassifierBuilderTest.getIrisFile() );
+
+		assertEquals( 147, countCorrect( matrix ) );
+		assertEquals( Integer.valueOf( 50 ), matrix.getClassCounts().get( "Iris-setosa" ) );
+	}
+
+	@Test
+	public void streamingTrainingBuildsUpdateableClassifier() throws Exception {
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		IClassifierBuilder builder = factory.createStreamingClassifierBuilder( UPDATEABLE_CLASSIFIER_NAME, null, null, null, ClassifierBuilderTest.getIrisFile() );
+
+		IConfidenceMatrix matrix = factory.evaluate( builder, ClassifierBuilderTest.getIrisFile() );
+
+		assertTrue( countCorrect( matrix ) > 140 );
+	}
+
+	@Test( expected = ClassifierNotUpdateableException.class )
+	public void streamingTrainingRejectsBatchClassifiers() throws Exception {
+		new ClassifierBuilderFactory().createStreamingClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, null, null, null, ClassifierBuilderTest.getIrisFile() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void streamingTrainingRejectsBatchFilters() throws Exception {
+		new ClassifierBuilderFactory().createStreamingClassifierBuilder( UPDATEABLE_CLASSIFIER_NAME, null, ClassifierBuilderTest.FILTER_NAME, null, ClassifierBuilderTest.getIrisFile() );
+	}
+
+	@Test
+	public void unknownPredictionsAreNamed() throws Exception {
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		IClassifierBuilder builder = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																		ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, ClassifierBuilderTest.getIrisFile() );
+
+		//	predicts a label the dataset does not have
+		IClassifierBuilder wrong = (IClassifierBuilder) Proxy.newProxyInstance( getClass().getClassLoader(), new Class<?>[] { IClassifierBuilder.class }, ( proxy, method, args ) -> {
+			if ( method.getName().equals( "classify" ) ) {
+				return "Iris-unknown";
+			}
+
+			try {
+				return method.invoke( builder, args );
+			}
+			catch ( InvocationTargetException e ) {
+				throw e.getCause();
+			}
+		} );
+
+		Instances instances = factory.readInstances( ClassifierBuilderTest.getIrisFile() );
+
+		try {
+			new PredictionCounter( wrong, instances ).add( instances.instance( 0 ) );
+			fail( "expected the unknown label to be rejected" );
+		}
+		catch ( IllegalStateException e ) {
+			assertTrue( e.getMessage(), e.getMessage().contains( "Iris-unknown" ) );
+		}
+	}
+
+	@Test
+	public void crossValidationCoversEveryRowOncePerRepetition() throws Exception {
+		ICrossValidator validator = new ClassifierBuilderFactory().createCrossValidator( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																						ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS );
+
+		ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+		ICrossValidationResult result = validator.crossValidate( ClassifierBuilderTest.getIrisFile(), 10, 2, 1, true, executor );
+		ICrossValidationResult again = validator.crossValidate( ClassifierBuilderTest.getIrisFile(), 10, 2, 1, true, executor );
+
+		executor.shutdown();
+
+		assertEquals( 20, result.getFoldMatrices().size() );
+		assertEquals( Integer.valueOf( 100 ), result.getMergedMatrix().getClassCounts().get( "Iris-setosa" ) );
+		assertEquals( Integer.valueOf( 5 ), result.getFoldMatrices().get( 0 ).getClassCounts().get( "Iris-setosa" ) );
+		assertTrue( countCorrect( result.getMergedMatrix() ) > 270 );
+		assertEquals( result.getMergedMatrix().getMatrix(), again.getMergedMatrix().getMatrix() );
+	}
+
+	@Test
+	public void parameterSearchHalvesCandidatesBetweenRungs() throws Exception {
+		Map<String,List<String>> classifierSearchSpace = new LinkedHashMap<String,List<String>>();
+		classifierSearchSpace.put( "-C", Arrays.asList( "0.05", "0.1", "0.25" ) );
+		classifierSearchSpace.put( "-M", Arrays.asList( "1", "2", "5" ) );
+
+		IParameterSearch search = new ClassifierBuilderFactory().createParameterSearch( ClassifierBuilderTest.CLASSIFIER_NAME, classifierSearchSpace,
+																						ClassifierBuilderTest.FILTER_NAME, null );
+
+		ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+		IParameterSearchResult result = search.search( ClassifierBuilderTest.getIrisFile(), 20, 0.3, 1, executor );
+
+		executor.shutdown();
+
+		assertEquals( 9, result.getNumCandidates() );
+		assertEquals( 9 + 3, result.getNumTrainings() );
+		assertEquals( 4, result.getBestClassifierArguments().size() );
+		assertTrue( result.getBestAccuracy() > 0.9 );
+		assertNotNull( result.getBestBuilder() );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void parameterSearchRejectsZeroCandidates() throws Exception {
+		new ClassifierBuilderFactory().createParameterSearch( ClassifierBuilderTest.CLASSIFIER_NAME, null, ClassifierBuilderTest.FILTER_NAME, null )
+			.search( ClassifierBuilderTest.getIrisFile(), 0, 0.3, 1 );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void parameterSearchRejectsNaNHoldout() throws Exception {
+		new ClassifierBuilderFactory().createParameterSearch( ClassifierBuilderTest.CLASSIFIER_NAME, null, ClassifierBuilderTest.FILTER_NAME, null )
+			.search( ClassifierBuilderTest.getIrisFile(), 4, Double.NaN, 1 );
+	}
+
+	@Test
+	public void ensemblesTrainInParallelWithSequentialResults() throws Exception {
+		List<String> forestArguments = Arrays.asList( "-I", "20", "-S", "1" );
+
+		ClassifierBuilderFactory parallelFactory = new ClassifierBuilderFactory( 4 );
+		ClassifierBuilderFactory sequentialFactory = new ClassifierBuilderFactory( 1 );
+
+		ClassifierBuilder parallel = parallelFactory.trainClassifierBuilder( FOREST_CLASSIFIER_NAME, forestArguments, ClassifierBuilderTest.FILTER_NAME, null, ClassifierBuilderTest.getIrisFile() );
+		ClassifierBuilder sequential = sequentialFactory.trainClassifierBuilder( FOREST_CLASSIFIER_NAME, forestArguments, ClassifierBuilderTest.FILTER_NAME, null, ClassifierBuilderTest.getIrisFile() );
+
+		assertEquals( 20, parallel.getTrainingMetrics().getNumMembers() );
+		assertEquals( 4, parallel.getTrainingMetrics().getNumSlots() );
+		assertEquals( 1, sequential.getTrainingMetrics().getNumSlots() );
+
+		Instances rawInstances = parallelFactory.readInstances( ClassifierBuilderTest.getIrisFile() );
+		assertEquals( ClassifierBuilderTest.classifyAll( sequential, rawInstances ), ClassifierBuilderTest.classifyAll( parallel, rawInstances ) );
+
+		ClassifierBuilder explicit = parallelFactory.trainClassifierBuilder( FOREST_CLASSIFIER_NAME, Arrays.asList( "-I", "20", "-num-slots", "2" ), null, null, ClassifierBuilderTest.getIrisFile() );
+		assertEquals( 2, explicit.getTrainingMetrics().getNumSlots() );
+
+		ClassifierBuilder single = parallelFactory.trainClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS, null, null, ClassifierBuilderTest.getIrisFile() );
+		assertNull( single.getTrainingMetrics() );
+	}
+
+	@Test
+	public void crossValidationTrainsEnsemblesOnOneSlot() throws Exception {
+		Set<Integer> slotsUsed = ConcurrentHashMap.newKeySet();
+
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory( 4 ) {
+			@Override
+			ClassifierBuilder trainClassifierBuilder( String classifierName, List<String> classifierArguments, String filterName, List<String> filterArguments, Instances rawInstances, int numSlots ) throws Exception {
+				ClassifierBuilder ret = super.trainClassifierBuilder( classifierName, classifierArguments, filterName, filterArguments, rawInstances, numSlots );
+				slotsUsed.add( ret.getTrainingMetrics().getNumSlots() );
+				return ret;
+			}
+		};
+
+		factory.createCrossValidator( FOREST_CLASSIFIER_NAME, Arrays.asList( "-I", "10" ), null, null ).crossValidate( ClassifierBuilderTest.getIrisFile(), 3, 1, 1, true );
+
+		assertEquals( Collections.singleton( 1 ), slotsUsed );
+	}
+
+	static int countCorrect( IConfidenceMatrix matrix ) {
+		int ret = 0;
+
+		Map<String,Integer> classCounts = matrix.getClassCounts();
+		Map<String,Integer> counts = matrix.getMatrix();
+
+		for ( String label : classCounts.keySet() ) {
+			ret += counts.get( label + ",,,,," + label );
+		}
+
+		return ret;
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.core.Utils;
+import weka.filters.Filter;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierParams;
+import com.tolstoy.aiaiai.api.IPrimitiveClassifierParams;
+import com.tolstoy.aiaiai.api.AttributeNotSetException;
+
+public class ClassifierBuilderTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	static final String CLASSIFIER_NAME = "weka.classifiers.trees.J48";
+	static final String FILTER_NAME = "weka.filters.unsupervised.attribute.Normalize";
+	static final List<String> CLASSIFIER_ARGUMENTS = Arrays.asList( "-C", "0.25", "-M", "2" );
+	static final List<String> FILTER_ARGUMENTS = Arrays.asList( "-S", "1.0", "-T", "0.0" );
+
+	static File getIrisFile() throws Exception {
+		return Paths.get( ClassifierBuilderTest.class.getResource( "/iris.arff" ).toURI() ).toFile();
+	}
+
+	@Test
+	public void classifyMatchesWekaOnTrainingRows() throws Exception {
+		File inputFile = getIrisFile();
+
+		IClassifierBuilder<Double> builder = new ClassifierBuilderFactory().createClassifierBuilder( CLASSIFIER_NAME, CLASSIFIER_ARGUMENTS, FILTER_NAME, FILTER_ARGUMENTS, inputFile );
+
+		Classifier classifier = AbstractClassifier.forName( CLASSIFIER_NAME, CLASSIFIER_ARGUMENTS.toArray( new String[ 0 ] ) );
+		Filter filter = (Filter) Class.forName( FILTER_NAME ).getDeclaredConstructor().newInstance();
+		( (OptionHandler) filter ).setOptions( FILTER_ARGUMENTS.toArray( new String[ 0 ] ) );
+
+		Instances rawInstances = new Instances( new BufferedReader( new FileReader( inputFile ) ) );
+		rawInstances.setClassIndex( rawInstances.numAttributes() - 1 );
+		filter.setInputFormat( rawInstances );
+		Instances filteredInstances = Filter.useFilter( rawInstances, filter );
+		classifier.buildClassifier( filteredInstances );
+
+		IClassifierParams<Double> params = builder.createClassifierParams();
+
+		for ( int row = 0; row < rawInstances.numInstances(); row++ ) {
+			for ( int i = 0; i < rawInstances.numAttributes() - 1; i++ ) {
+				params.setValue( rawInstances.attribute( i ).name(), rawInstances.instance( row ).value( i ) );
+			}
+
+			String expected = filteredInstances.classAttribute().value( (int) classifier.classifyInstance( filteredInstances.instance( row ) ) );
+
+			assertEquals( "row " + row, expected, builder.classify( params ) );
+		}
+	}
+
+	@Test
+	public void classifyBatchMatchesClassify() throws Exception {
+		File inputFile = getIrisFile();
+
+		IClassifierBuilder<Double> builder = new ClassifierBuilderFactory().createClassifierBuilder( CLASSIFIER_NAME, CLASSIFIER_ARGUMENTS, FILTER_NAME, FILTER_ARGUMENTS, inputFile );
+
+		Instances rawInstances = new Instances( new BufferedReader( new FileReader( inputFile ) ) );
+
+		List<IClassifierParams<Double>> paramsList = new ArrayList<IClassifierParams<Double>>();
+		List<String> expected = new ArrayList<String>();
+
+		for ( Instance instance : rawInstances ) {
+			IClassifierParams<Double> params = builder.createClassifierParams();
+			for ( int i = 0; i < rawInstances.numAttributes() - 1; i++ ) {
+				params.setValue( rawInstances.attribute( i ).name(), instance.value( i ) );
+			}
+
+			paramsList.add( params );
+			expected.add( builder.classify( params ) );
+		}
+
+		assertEquals( expected, builder.classifyBatch( paramsList ) );
+	}
+
+	@Test
+	public void loadedBuilderMatchesSavedBuilder() throws Exception {
+		File inputFile = getIrisFile();
+		File modelFile = temporaryFolder.newFile( "iris.model" );
+
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		IClassifierBuilder<Double> builder = factory.createClassifierBuilder( CLASSIFIER_NAME, CLASSIFIER_ARGUMENTS, FILTER_NAME, FILTER_ARGUMENTS, inputFile );
+
+		factory.saveClassifierBuilder( builder, modelFile );
+
+		IClassifierBuilder<Double> loaded = factory.loadClassifierBuilder( modelFile );
+
+		Instances rawInstances = new Instances( new BufferedReader( new FileReader( inputFile ) ) );
+
+		assertEquals( classifyAll( builder, rawInstances ), classifyAll( loaded, rawInstances ) );
+	}
+
+	@Test
+	public void primitiveParamsMatchBoxedParams() throws Exception {
+		File inputFile = getIrisFile();
+
+		IClassifierBuilder<Double> builder = new ClassifierBuilderFactory().createClassifierBuilder( CLASSIFIER_NAME, CLASSIFIER_ARGUMENTS, FILTER_NAME, FILTER_ARGUMENTS, inputFile );
+
+		Instances rawInstances = new Instances( new BufferedReader( new FileReader( inputFile ) ) );
+
+		IPrimitiveClassifierParams params = builder.createPrimitiveClassifierParams();
+		int[] indexes = new int[ rawInstances.numAttributes() - 1 ];
+		for ( int i = 0; i < indexes.length; i++ ) {
+			indexes[ i ] = params.getIndex( rawInstances.attribute( i ).name() );
+		}
+
+		List<String> actual = new ArrayList<String>();
+		for ( Instance instance : rawInstances ) {
+			for ( int i = 0; i < indexes.length; i++ ) {
+				params.setValue( indexes[ i ], instance.value( i ) );
+			}
+
+			actual.add( builder.classify( params ) );
+		}
+
+		assertEquals( classifyAll( builder, rawInstances ), actual );
+	}
+
+	@Test
+	public void floatValuesKeepTheirDecimalValue() throws Exception {
+		ClassifierBuilder<Number> builder = (ClassifierBuilder<Number>) new ClassifierBuilderFactory().createClassifierBuilder( CLASSIFIER_NAME, CLASSIFIER_ARGUMENTS, FILTER_NAME, FILTER_ARGUMENTS, getIrisFile() );
+
+		assertEquals( 1.1, builder.toDouble( 1.1f ), 0 );
+		assertEquals( 1.1, builder.toDouble( 1.1 ), 0 );
+		assertEquals( 3.0, builder.toDouble( 3 ), 0 );
+	}
+
+	@Test
+	public void distributionsMatchWekaAndLabels() throws Exception {
+		File inputFile = getIrisFile();
+
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		ClassifierBuilder<Double> builder = (ClassifierBuilder<Double>) factory.createClassifierBuilder( CLASSIFIER_NAME, CLASSIFIER_ARGUMENTS, FILTER_NAME, FILTER_ARGUMENTS, inputFile );
+		IClassifierBuilder<Double> concurrent = factory.createConcurrentClassifierBuilder( CLASSIFIER_NAME, CLASSIFIER_ARGUMENTS, FILTER_NAME, FILTER_ARGUMENTS, inputFile );
+
+		Instances rawInstances = factory.readInstances( inputFile );
+		Instances filteredInstances = Filter.useFilter( rawInstances, builder.getFilter() );
+
+		assertEquals( Arrays.asList( "Iris-setosa", "Iris-versicolor", "Iris-virginica" ), builder.getClassAttributeOptions() );
+
+		List<IClassifierParams<Double>> paramsList = new ArrayList<IClassifierParams<Double>>();
+		double[] reused = new double[ builder.getClassAttributeOptions().size() ];
+
+		for ( int row = 0; row < rawInstances.numInstances(); row++ ) {
+			IClassifierParams<Double> params = builder.createClassifierParams();
+			for ( int i = 0; i < rawInstances.numAttributes() - 1; i++ ) {
+				params.setValue( rawInstances.attribute( i ).name(), rawInstances.instance( row ).value( i ) );
+			}
+			paramsList.add( params );
+
+			double[] expected = builder.getClassifier().distributionForInstance( filteredInstances.instance( row ) );
+
+			assertArrayEquals( "row " + row, expected, builder.classifyDistribution( params ), 0 );
+			assertSame( reused, concurrent.classifyDistribution( params, reused ) );
+			assertArrayEquals( "row " + row, expected, reused, 0 );
+			assertEquals( builder.classify( params ), builder.getClassAttributeOptions().get( Utils.maxIndex( expected ) ) );
+		}
+
+		double[][] batch = concurrent.classifyDistributionBatch( paramsList );
+		for ( int row = 0; row < batch.length; row++ ) {
+			assertArrayEquals( "row " + row, builder.classifyDistribution( paramsList.get( row ) ), batch[ row ], 0 );
+		}
+	}
+
+	@Test( expected = AttributeNotSetException.class )
+	public void primitiveParamsRequireEveryValue() throws Exception {
+		IClassifierBuilder<Double> builder = new ClassifierBuilderFactory().createClassifierBuilder( CLASSIFIER_NAME, CLASSIFIER_ARGUMENTS, FILTER_NAME, FILTER_ARGUMENTS, getIrisFile() );
+
+		IPrimitiveClassifierParams params = builder.createPrimitiveClassifierParams();
+		params.setValue( "sepallength", 5.1 );
+
+		builder.classify( params );
+	}
+
+	static List<String> classifyAll( IClassifierBuilder<Double> builder, Instances rawInstances ) throws Exception {
+		List<String> ret = new ArrayList<String>();
+
+		IClassifierParams<Double> params = builder.createClassifierParams();
+
+		for ( Instance instance : rawInstances ) {
+			for ( int i = 0; i < rawInstances.numAttributes() - 1; i++ ) {
+				params.setValue( rawInstances.attribute( i ).name(), instance.value( i ) );
+			}
+
+			ret.add( builder.classify( params ) );
+		}
+
+		return ret;
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassifierModelStoreTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void loadReportsMetrics() throws Exception {
+		File modelFile = saveIrisModel();
+
+		ClassifierModel model = new ClassifierModelStore().load( modelFile );
+
+		assertNotNull( model.getLoadMetrics() );
+		assertEquals( modelFile.length(), model.getLoadMetrics().getNumBytes() );
+		assertEquals( 5, model.getStructure().numAttributes() );
+	}
+
+	@Test( expected = StreamCorruptedException.class )
+	public void loadRejectsCorruptedPayload() throws Exception {
+		File modelFile = saveIrisModel();
+
+		try ( RandomAccessFile file = new RandomAccessFile( modelFile, "rw" ) ) {
+			long position = file.length() / 2;
+			file.seek( position );
+			int b = file.read();
+			file.seek( position );
+			file.write( b ^ 0xff );
+		}
+
+		new ClassifierModelStore().load( modelFile );
+	}
+
+	@Test
+	public void mappedInputStreamReadsAcrossWindows() throws Exception {
+		byte[] data = new byte[ 10000 ];
+		new Random( 1 ).nextBytes( data );
+
+		File file = temporaryFolder.newFile( "data.bin" );
+		Files.write( file.toPath(), data );
+
+		try ( FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ) ) {
+			MappedInputStream in = new MappedInputStream( channel, 100, data.length, 333 );
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[ 1000 ];
+			int count;
+			while ( ( count = in.read( buffer ) ) >= 0 ) {
+				out.write( buffer, 0, count );
+			}
+
+			byte[] expected = new byte[ data.length - 100 ];
+			System.arraycopy( data, 100, expected, 0, expected.length );
+
+			assertArrayEquals( expected, out.toByteArray() );
+		}
+	}
+
+	private File saveIrisModel() throws Exception {
+		File modelFile = temporaryFolder.newFile( "iris.model" );
+
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		factory.saveClassifierBuilder( factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																		ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS,
+																		ClassifierBuilderTest.getIrisFile() ), modelFile );
+
+		return modelFile;
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.StreamCorruptedException;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import weka.core.Instances;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IKeyedInstance;
+
+public class ColumnarDatasetStoreTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void convertedDatasetMatchesArff() throws Exception {
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+		File columnarFile = temporaryFolder.newFile( "iris.col" );
+
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+		factory.convertToColumnar( inputFile, columnarFile );
+
+		assertTrue( ColumnarDatasetStore.isColumnar( columnarFile ) );
+		assertFalse( ColumnarDatasetStore.isColumnar( inputFile ) );
+
+		Instances expected = factory.readInstances( inputFile );
+		Instances actual = new ColumnarDatasetStore().load( columnarFile );
+
+		assertEquals( null, expected.equalHeadersMsg( actual ) );
+		assertEquals( expected.numInstances(), actual.numInstances() );
+		for ( int row = 0; row < expected.numInstances(); row++ ) {
+			assertEquals( "row " + row, expected.instance( row ).toString(), actual.instance( row ).toString() );
+		}
+	}
+
+	@Test
+	public void builderAndKeyedInstancesAcceptColumnarFiles() throws Exception {
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+		File columnarFile = temporaryFolder.newFile( "iris.col" );
+
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+		factory.convertToColumnar( inputFile, columnarFile );
+
+		IClassifierBuilder<Double> fromArff = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																				ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, inputFile );
+		IClassifierBuilder<Double> fromColumnar = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																				ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, columnarFile );
+
+		Instances rawInstances = factory.readInstances( inputFile );
+
+		assertEquals( ClassifierBuilderTest.classifyAll( fromArff, rawInstances ), ClassifierBuilderTest.classifyAll( fromColumnar, rawInstances ) );
+
+		List<IKeyedInstance<String,Double>> expected = new KeyedInstanceSet<String,Double>( inputFile ).getKeyedInstances();
+		List<IKeyedInstance<String,Double>> actual = new KeyedInstanceSet<String,Double>( columnarFile ).getKeyedInstances();
+
+		assertEquals( expected.size(), actual.size() );
+		for ( int i = 0; i < expected.size(); i++ ) {
+			assertEquals( expected.get( i ).toString(), actual.get( i ).toString() );
+		}
+
+		assertEquals( 147, ClassifierBuilderFactoryTest.countCorrect( factory.evaluate( fromColumnar, columnarFile ) ) );
+	}
+
+	@Test( expected = StreamCorruptedException.class )
+	public void truncatedFileIsRejected() throws Exception {
+		File columnarFile = temporaryFolder.newFile( "iris.col" );
+
+		new ClassifierBuilderFactory().convertToColumnar( ClassifierBuilderTest.getIrisFile(), columnarFile );
+
+		try ( RandomAccessFile file = new RandomAccessFile( columnarFile, "rw" ) ) {
+			file.setLength( file.length() - 8 );
+		}
+
+		new ColumnarDatasetStore().load( columnarFile );
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import weka.core.Instances;
+
+import com.tolstoy.aiaiai.api.IKeyedInstance;
+
+public class ColumnarKeyedInstanceSetTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void viewsMatchKeyedInstances() throws Exception {
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+		File columnarFile = temporaryFolder.newFile( "iris.col" );
+
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+		factory.convertToColumnar( inputFile, columnarFile );
+
+		List<IKeyedInstance<String,Double>> expected = new KeyedInstanceSet<String,Double>( inputFile ).getKeyedInstances();
+
+		for ( ColumnarKeyedInstanceSet set : Arrays.asList( new ColumnarKeyedInstanceSet( inputFile ),
+															new ColumnarKeyedInstanceSet( columnarFile ),
+															(ColumnarKeyedInstanceSet) factory.createKeyedInstanceSet( inputFile ) ) ) {
+			List<IKeyedInstance<String,Double>> actual = set.getKeyedInstances();
+
+			assertEquals( expected.size(), actual.size() );
+
+			for ( int row = 0; row < expected.size(); row++ ) {
+				assertEquals( expected.get( row ).getKeys(), actual.get( row ).getKeys() );
+				assertEquals( expected.get( row ).getExpectedClass(), actual.get( row ).getExpectedClass() );
+
+				for ( String key : expected.get( row ).getKeys() ) {
+					assertEquals( expected.get( row ).getValue( key ), actual.get( row ).getValue( key ) );
+				}
+			}
+		}
+	}
+
+	@Test
+	public void bulkAccessorsMatchViews() throws Exception {
+		Instances instances = new ClassifierBuilderFactory().readInstances( ClassifierBuilderTest.getIrisFile() );
+
+		ColumnarKeyedInstanceSet set = new ColumnarKeyedInstanceSet( instances );
+
+		assertEquals( 150, set.getNumRows() );
+		assertEquals( Arrays.asList( "sepallength", "sepalwidth", "petallength", "petalwidth" ), set.getAttributeNames() );
+		assertEquals( Arrays.asList( "Iris-setosa", "Iris-versicolor", "Iris-virginica" ), set.getClassLabels() );
+
+		int attribute = set.getAttributeIndex( "petallength" );
+
+		double[] column = new double[ set.getNumRows() ];
+		set.copyColumn( attribute, 0, column, 0, column.length );
+
+		int[] ordinals = new int[ 10 ];
+		set.copyClassOrdinals( 100, ordinals, 0, ordinals.length );
+
+		double[] row = new double[ set.getAttributeNames().size() ];
+
+		for ( int i = 0; i < set.getNumRows(); i++ ) {
+			assertEquals( instances.instance( i ).value( 2 ), column[ i ], 0 );
+			assertEquals( set.getKeyedInstance( i ).getValue( "petallength" ), set.getValue( i, attribute ), 0 );
+			assertEquals( (int) instances.instance( i ).classValue(), set.getClassOrdinal( i ) );
+
+			set.copyRow( i, row );
+			assertArrayEquals( Arrays.copyOf( instances.instance( i ).toDoubleArray(), 4 ), row, 0 );
+		}
+
+		int[] expectedOrdinals = new int[ 10 ];
+		Arrays.fill( expectedOrdinals, 2 );
+		assertArrayEquals( expectedOrdinals, ordinals );
+	}
+
+	@Test
+	public void viewsWriteThroughToColumns() throws Exception {
+		ColumnarKeyedInstanceSet set = new ColumnarKeyedInstanceSet( ClassifierBuilderTest.getIrisFile() );
+
+		IKeyedInstance<String,Double> view = set.getKeyedInstances().get( 3 );
+		view.setValue( "sepalwidth", 9.5 );
+		view.setExpectedClass( "Iris-virginica" );
+
+		assertEquals( 9.5, set.getValue( 3, set.getAttributeIndex( "sepalwidth" ) ), 0 );
+		assertEquals( "Iris-virginica", set.getExpectedClass( 3 ) );
+		assertNull( view.getValue( "nosuchattribute" ) );
+
+		view.setExpectedClass( null );
+		assertEquals( -1, set.getClassOrdinal( 3 ) );
+		assertNull( set.getExpectedClass( 3 ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void viewsRejectUnknownClasses() throws Exception {
+		new ColumnarKeyedInstanceSet( ClassifierBuilderTest.getIrisFile() ).getKeyedInstance( 0 ).setExpectedClass( "Iris-unknown" );
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.filters.AllFilter;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Discretize;
+import weka.filters.unsupervised.attribute.Normalize;
+import weka.filters.unsupervised.attribute.Standardize;
+
+public class CompiledFilterTest {
+	@Test
+	public void normalizeMatchesFilterExactly() throws Exception {
+		assertMatchesFilter( new Normalize() );
+		assertMatchesFilter( configure( new Normalize(), "-S", "2.0", "-T", "-1.0" ) );
+	}
+
+	@Test
+	public void standardizeMatchesFilterExactly() throws Exception {
+		assertMatchesFilter( new Standardize() );
+	}
+
+	@Test
+	public void allFilterMatchesFilterExactly() throws Exception {
+		assertMatchesFilter( new AllFilter() );
+	}
+
+	@Test
+	public void unsupportedFiltersAreNotCompiled() throws Exception {
+		Instances data = new ClassifierBuilderFactory().readInstances( ClassifierBuilderTest.getIrisFile() );
+
+		Filter filter = new Discretize();
+		filter.setInputFormat( data );
+		Filter.useFilter( data, filter );
+
+		assertNull( CompiledFilter.compile( filter, data ) );
+
+		Normalize unfitted = new Normalize();
+		unfitted.setInputFormat( data );
+
+		assertNull( CompiledFilter.compile( unfitted, data ) );
+	}
+
+	private static void assertMatchesFilter( Filter filter ) throws Exception {
+		Instances data = new ClassifierBuilderFactory().readInstances( ClassifierBuilderTest.getIrisFile() );
+
+		filter.setInputFormat( data );
+		Instances filtered = Filter.useFilter( data, filter );
+
+		CompiledFilter compiled = CompiledFilter.compile( filter, data );
+		assertNotNull( filter.getClass().getName(), compiled );
+
+		for ( int row = 0; row < data.numInstances(); row++ ) {
+			assertBitsEqual( filter.getClass().getName() + " row " + row, filtered.instance( row ).toDoubleArray(), compiled.apply( data.instance( row ).toDoubleArray() ) );
+		}
+
+		Instance withMissing = data.instance( 0 ).copy( data.instance( 0 ).toDoubleArray() );
+		withMissing.setMissing( 1 );
+		withMissing.setDataset( data );
+
+		filter.input( withMissing );
+		filter.batchFinished();
+
+		assertBitsEqual( filter.getClass().getName() + " missing", filter.output().toDoubleArray(), compiled.apply( withMissing.toDoubleArray() ) );
+	}
+
+	private static void assertBitsEqual( String message, double[] expected, double[] actual ) {
+		assertEquals( message, expected.length, actual.length );
+
+		for ( int i = 0; i < expected.length; i++ ) {
+			assertEquals( message + " " + Arrays.toString( expected ) + " " + Arrays.toString( actual ), Double.doubleToLongBits( expected[ i ] ), Double.doubleToLongBits( actual[ i ] ) );
+		}
+	}
+
+	private static Filter configure( Filter filter, String... options ) throws Exception {
+		( (OptionHandler) filter ).setOptions( options );
+
+		return filter;
+	}
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.lang.invoke.MethodHandles;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import weka.classifiers.UpdateableClassifier;
+import weka.classifiers.rules.ZeroR;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ConverterUtils.DataSource;
+import weka.filters.AllFilter;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierParams;
+import com.tolstoy.aiaiai.api.IKeyedInstance;
+import com.tolstoy.aiaiai.api.ClassifierNotUpdateableException;
+import com.tolstoy.aiaiai.api.AttributeNotSetException;
+
+public class ConcurrentClassifierBuilderTest {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private static final int NUM_PASSES = 200;
+
+	//	not one of the filters CompiledFilter handles, so every row goes through Weka's filter queue
+	private static final String WEKA_FILTER_NAME = "weka.filters.unsupervised.attribute.Center";
+
+	//	deliberately loose so a busy build machine does not fail the check, but a serialized pool does
+	private static final double MIN_SPEEDUP = 1.25;
+
+	//	wall-clock speedup depends on the machine running the build, so it is only asserted under the large-tests profile
+	private static final boolean ASSERT_SPEEDUP = Boolean.getBoolean( "assertSpeedup" );
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void concurrentClassifyMatchesSequentialClassify() throws Exception {
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		IClassifierBuilder<Double> sequential = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																				ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, inputFile );
+		IClassifierBuilder<Double> concurrent = factory.createConcurrentClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																				ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, inputFile );
+
+		Instances instances = DataSource.read( inputFile.getAbsolutePath() );
+
+		List<String> expected = new ArrayList<String>();
+		IClassifierParams<Double> sequentialParams = sequential.createClassifierParams();
+		for ( Instance instance : instances ) {
+			fillParams( sequentialParams, instance );
+			expected.add( sequential.classify( sequentialParams ) );
+		}
+
+		IClassifierParams<Double> warmupParams = concurrent.createClassifierParams();
+		for ( int pass = 0; pass < NUM_PASSES; pass++ ) {
+			for ( Instance instance : instances ) {
+				fillParams( warmupParams, instance );
+				concurrent.classify( warmupParams );
+			}
+		}
+
+		int numProcessors = Runtime.getRuntime().availableProcessors();
+		int maxThreads = Math.max( 4, numProcessors );
+		double singleThreadRate = 0;
+		double bestSpeedup = 1;
+
+		for ( int numThreads = 1; numThreads <= maxThreads; numThreads *= 2 ) {
+			ExecutorService executor = Executors.newFixedThreadPool( numThreads );
+
+			List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+			for ( int t = 0; t < numThreads; t++ ) {
+				tasks.add( () -> {
+					IClassifierParams<Double> params = concurrent.createClassifierParams();
+					int numMismatches = 0;
+					for ( int pass = 0; pass < NUM_PASSES; pass++ ) {
+						for ( int row = 0; row < instances.numInstances(); row++ ) {
+							fillParams( params, instances.instance( row ) );
+							if ( !expected.get( row ).equals( concurrent.classify( params ) ) ) {
+								numMismatches++;
+							}
+						}
+					}
+
+					return numMismatches;
+				} );
+			}
+
+			long start = System.nanoTime();
+
+			int numMismatches = 0;
+			for ( Future<Integer> future : executor.invokeAll( tasks ) ) {
+				numMismatches += future.get();
+			}
+
+			long elapsed = System.nanoTime() - start;
+
+			executor.shutdown();
+
+			double rate = (double) numThreads * NUM_PASSES * instances.numInstances() / ( elapsed / 1e9 );
+			if ( numThreads == 1 ) {
+				singleThreadRate = rate;
+			}
+			else if ( numThreads <= numProcessors ) {
+				bestSpeedup = Math.max( bestSpeedup, rate / singleThreadRate );
+			}
+
+			logger.info( numThreads + " threads: " + Math.round( rate ) + " rows/sec, speedup=" + String.format( "%.2f", rate / singleThreadRate ) );
+
+			assertEquals( "mismatched predictions with " + numThreads + " threads", 0, numMismatches );
+		}
+
+		assertTrue( ( (ConcurrentClassifierBuilder) concurrent ).getNumCopies() <= maxThreads );
+
+		//	with one core there is nothing to scale onto, so only the predictions are checked
+		if ( ASSERT_SPEEDUP && numProcessors >= 2 ) {
+			assertTrue( "speedup " + String.format( "%.2f", bestSpeedup ) + " on " + numProcessors + " cores", bestSpeedup >= MIN_SPEEDUP );
+		}
+	}
+
+	@Test
+	public void concurrentWekaFilterMatchesSequentialClassify() throws Exception {
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		IClassifierBuilder<Double> sequential = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																				WEKA_FILTER_NAME, null, inputFile );
+		IClassifierBuilder<Double> concurrent = factory.createConcurrentClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																				WEKA_FILTER_NAME, null, inputFile );
+
+		assertEquals( null, ( (ConcurrentClassifierBuilder<Double>) concurrent ).getPrototype().getCompiledFilter() );
+
+		Instances instances = DataSource.read( inputFile.getAbsolutePath() );
+		List<String> expected = ClassifierBuilderTest.classifyAll( sequential, instances );
+
+		ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for ( int t = 0; t < 4; t++ ) {
+			tasks.add( () -> {
+				IClassifierParams<Double> params = concurrent.createClassifierParams();
+				int numMismatches = 0;
+				for ( int pass = 0; pass < NUM_PASSES / 10; pass++ ) {
+					for ( int row = 0; row < instances.numInstances(); row++ ) {
+						fillParams( params, instances.instance( row ) );
+						if ( !expected.get( row ).equals( concurrent.classify( params ) ) ) {
+							numMismatches++;
+						}
+					}
+				}
+
+				return numMismatches;
+			} );
+		}
+
+		try {
+			for ( Future<Integer> future : executor.invokeAll( tasks ) ) {
+				assertEquals( 0, (int) future.get() );
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		assertTrue( ( (ConcurrentClassifierBuilder) concurrent ).getNumCopies() <= 4 );
+	}
+
+	@Test
+	public void inputErrorsKeepThePooledCopy() throws Exception {
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+
+		IClassifierBuilder<Double> concurrent = new ClassifierBuilderFactory().createConcurrentClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																				WEKA_FILTER_NAME, null, inputFile );
+
+		Instances instances = DataSource.read( inputFile.getAbsolutePath() );
+		ClassifierBuilderTest.classifyAll( concurrent, instances );
+
+		assertEquals( 1, ( (ConcurrentClassifierBuilder) concurrent ).getNumCopies() );
+
+		for ( int i = 0; i < 10; i++ ) {
+			try {
+				concurrent.classify( concurrent.createClassifierParams() );
+			}
+			catch ( AttributeNotSetException e ) {
+			}
+
+			assertEquals( 1, ( (ConcurrentClassifierBuilder) concurrent ).getNumCopies() );
+		}
+
+		assertEquals( ClassifierBuilderTest.classifyAll( ( (ConcurrentClassifierBuilder<Double>) concurrent ).getPrototype(), instances ),
+						ClassifierBuilderTest.classifyAll( concurrent, instances ) );
+	}
+
+	@Test
+	public void updateWhileClassifying() throws Exception {
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+
+		IClassifierBuilder<Double> concurrent = new ClassifierBuilderFactory().loadConcurrentClassifierBuilder( trainUpdateableModel( inputFile ) );
+
+		Instances instances = DataSource.read( inputFile.getAbsolutePath() );
+
+		List<IKeyedInstance<String,Double>> keyedInstances = new KeyedInstanceSet<String,Double>( inputFile ).getKeyedInstances();
+
+		AtomicBoolean done = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+		for ( int t = 0; t < 4; t++ ) {
+			tasks.add( () -> {
+				IClassifierParams<Double> params = concurrent.createClassifierParams();
+				int count = 0;
+				while ( !done.get() ) {
+					for ( Instance instance : instances ) {
+						fillParams( params, instance );
+						concurrent.classify( params );
+						count++;
+					}
+				}
+
+				return count;
+			} );
+		}
+
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for ( Callable<Integer> task : tasks ) {
+			futures.add( executor.submit( task ) );
+		}
+
+		for ( int i = 0; i < 20; i++ ) {
+			concurrent.updateBatch( keyedInstances.subList( i * 5, i * 5 + 5 ) );
+		}
+
+		done.set( true );
+
+		for ( Future<Integer> future : futures ) {
+			assertTrue( future.get() > 0 );
+		}
+
+		executor.shutdown();
+
+		assertEquals( 20, concurrent.getModelVersion() );
+
+		ClassifierBuilder<Double> prototype = ( (ConcurrentClassifierBuilder<Double>) concurrent ).getPrototype();
+		assertEquals( ClassifierBuilderTest.classifyAll( prototype, instances ), ClassifierBuilderTest.classifyAll( concurrent, instances ) );
+	}
+
+	@Test
+	public void singleRowUpdatesArePublishedWhole() throws Exception {
+		Instances instances = DataSource.read( ClassifierBuilderTest.getIrisFile().getAbsolutePath() );
+		instances.setClassIndex( instances.numAttributes() - 1 );
+
+		PairedCountClassifier classifier = new PairedCountClassifier();
+		classifier.buildClassifier( instances );
+
+		AllFilter filter = new AllFilter();
+		filter.setInputFormat( instances );
+
+		ClassifierBuilder<Double> builder = new ClassifierBuilder<Double>( classifier, filter, instances, new Metrics( false ) );
+		List<IKeyedInstance<String,Double>> keyedInstances = new KeyedInstanceSet<String,Double>( ClassifierBuilderTest.getIrisFile() ).getKeyedInstances();
+
+		AtomicBoolean done = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool( 2 );
+
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for ( int t = 0; t < 2; t++ ) {
+			futures.add( executor.submit( () -> {
+				IClassifierParams<Double> params = builder.createClassifierParams();
+				fillParams( params, instances.instance( 0 ) );
+
+				int count = 0;
+				while ( !done.get() ) {
+					builder.classify( params );
+					count++;
+				}
+
+				return count;
+			} ) );
+		}
+
+		int numUpdates = ClassifierBuilder.UPDATES_PER_PUBLISH * 10;
+		for ( int i = 0; i < numUpdates; i++ ) {
+			builder.update( keyedInstances.get( i % keyedInstances.size() ) );
+		}
+
+		done.set( true );
+
+		try {
+			for ( Future<Integer> future : futures ) {
+				assertTrue( future.get() > 0 );
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+
+		assertEquals( 10, builder.getModelVersion() );
+		assertEquals( numUpdates, ( (PairedCountClassifier) builder.getClassifier() ).second );
+
+		builder.update( keyedInstances.get( 0 ) );
+		assertEquals( 10, builder.getModelVersion() );
+
+		builder.flushUpdates();
+		assertEquals( 11, builder.getModelVersion() );
+		assertEquals( numUpdates + 1, ( (PairedCountClassifier) builder.getClassifier() ).second );
+	}
+
+	@Test( expected = ClassifierNotUpdateableException.class )
+	public void updateRejectsBatchClassifiers() throws Exception {
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+
+		IClassifierBuilder<Double> builder = new ClassifierBuilderFactory().createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																				ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, inputFile );
+
+		builder.update( new KeyedInstanceSet<String,Double>( inputFile ).getKeyedInstances().get( 0 ) );
+	}
+
+	private File trainUpdateableModel( File inputFile ) throws Exception {
+		File modelFile = temporaryFolder.newFile( "updateable.model" );
+
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		factory.saveClassifierBuilder( factory.createClassifierBuilder( "weka.classifiers.bayes.NaiveBayesUpdateable", null,
+																		ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, inputFile ), modelFile );
+
+		return modelFile;
+	}
+
+	private static void fillParams( IClassifierParams<Double> params, Instance instance ) {
+		for ( int i = 0; i < instance.numAttributes() - 1; i++ ) {
+			params.setValue( instance.attribute( i ).name(), instance.value( i ) );
+		}
+	}
+
+	//	updates its two counts one after the other, so a reader that sees them differ saw a half-updated model
+	static class PairedCountClassifier extends ZeroR implements UpdateableClassifier {
+		private static final long serialVersionUID = 1L;
+
+		volatile long first;
+		volatile long second;
+
+		public void updateClassifier( Instance instance ) {
+			first++;
+			Thread.yield();
+			second++;
+		}
+
+		@Override
+		public double classifyInstance( Instance instance ) {
+			long second = this.second;
+			long first = this.first;
+			if ( first != second ) {
+				throw new IllegalStateException( "classified with a half-updated model: " + first + " != " + second );
+			}
+
+			return super.classifyInstance( instance );
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import weka.classifiers.AbstractClassifier;
+import weka.classifiers.Classifier;
+import weka.classifiers.Evaluation;
+import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.filters.Filter;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IConfidenceMatrix;
+
+public class ConfidenceMatrixTest {
+	private static final double EPSILON = 1e-12;
+
+	@Test
+	public void concurrentPredictionsAreAllCounted() throws Exception {
+		Map<String,Integer> classCounts = new HashMap<String,Integer>();
+		classCounts.put( "a", 0 );
+		classCounts.put( "b", 0 );
+
+		IConfidenceMatrix matrix = new ConfidenceMatrix( classCounts );
+
+		ExecutorService executor = Executors.newFixedThreadPool( 8 );
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for ( int t = 0; t < 8; t++ ) {
+			tasks.add( () -> {
+				for ( int i = 0; i < 10000; i++ ) {
+					matrix.addPrediction( "a", i % 4 == 0 ? "b" : "a" );
+				}
+				return null;
+			} );
+		}
+
+		for ( Future<Void> future : executor.invokeAll( tasks ) ) {
+			future.get();
+		}
+
+		executor.shutdown();
+
+		assertEquals( 60000, matrix.getCount( "a", "a" ) );
+		assertEquals( 20000, matrix.getCount( "a", "b" ) );
+		assertEquals( Integer.valueOf( 20000 ), matrix.getMatrix().get( "a,,,,,b" ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void unknownLabelIsRejected() {
+		Map<String,Integer> classCounts = new HashMap<String,Integer>();
+		classCounts.put( "a", 0 );
+
+		new ConfidenceMatrix( classCounts ).addPrediction( "a", "z" );
+	}
+
+	@Test
+	public void metricsMatchWekaEvaluation() throws Exception {
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		IClassifierBuilder builder = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																		ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, inputFile );
+
+		IConfidenceMatrix matrix = factory.evaluate( builder, inputFile );
+
+		Classifier classifier = AbstractClassifier.forName( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS.toArray( new String[ 0 ] ) );
+		Filter filter = (Filter) Class.forName( ClassifierBuilderTest.FILTER_NAME ).getDeclaredConstructor().newInstance();
+		( (OptionHandler) filter ).setOptions( ClassifierBuilderTest.FILTER_ARGUMENTS.toArray( new String[ 0 ] ) );
+
+		Instances rawInstances = factory.readInstances( inputFile );
+		filter.setInputFormat( rawInstances );
+		Instances filteredInstances = Filter.useFilter( rawInstances, filter );
+		classifier.buildClassifier( filteredInstances );
+
+		Evaluation evaluation = new Evaluation( filteredInstances );
+		evaluation.evaluateModel( classifier, filteredInstances );
+
+		assertEquals( evaluation.kappa(), matrix.getKappa(), EPSILON );
+
+		for ( int i = 0; i < filteredInstances.numClasses(); i++ ) {
+			String label = filteredInstances.classAttribute().value( i );
+			assertEquals( label, evaluation.precision( i ), matrix.getPrecision( label ), EPSILON );
+			assertEquals( label, evaluation.recall( i ), matrix.getRecall( label ), EPSILON );
+			assertEquals( label, evaluation.fMeasure( i ), matrix.getF1( label ), EPSILON );
+		}
+	}
+}
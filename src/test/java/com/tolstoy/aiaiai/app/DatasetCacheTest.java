@@ -0,0 +1,139 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import weka.core.Instances;
+
+public class DatasetCacheTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void buildersOverOneFileShareOneParse() throws Exception {
+		DatasetCache cache = new DatasetCache();
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory( cache );
+
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+
+		factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS, ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, inputFile );
+		factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, null, null, null, inputFile );
+
+		assertEquals( 1, cache.getMisses() );
+		assertEquals( 1, cache.getHits() );
+
+		//	dense keyed sets stream the file into columns instead of pinning a second parse in the cache
+		assertEquals( 150, factory.createKeyedInstanceSet( inputFile ).getKeyedInstances().size() );
+		assertEquals( 1, cache.getMisses() );
+		assertEquals( 1, cache.getHits() );
+	}
+
+	@Test
+	public void modifiedFileIsParsedAgain() throws Exception {
+		DatasetCache cache = new DatasetCache();
+
+		File inputFile = copyIris( "iris.arff" );
+
+		Instances first = cache.get( inputFile );
+		assertSame( first, cache.get( inputFile ) );
+
+		inputFile.setLastModified( inputFile.lastModified() - 60000 );
+
+		assertNotSame( first, cache.get( inputFile ) );
+		assertEquals( 2, cache.getMisses() );
+
+		//	the parse of the old contents is dropped rather than left for the LRU
+		assertEquals( 1, cache.size() );
+		assertEquals( 1, cache.getEvictions() );
+	}
+
+	@Test
+	public void cachedInstancesAreReadOnly() throws Exception {
+		DatasetCache cache = new DatasetCache();
+
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+		Instances cached = cache.get( inputFile );
+		String firstLabel = cached.instance( 0 ).stringValue( cached.classIndex() );
+
+		try {
+			cached.randomize( new Random( 1 ) );
+			fail( "randomize modified the cached instances" );
+		}
+		catch ( UnsupportedOperationException e ) {
+		}
+
+		try {
+			cached.delete( 0 );
+			fail( "delete modified the cached instances" );
+		}
+		catch ( UnsupportedOperationException e ) {
+		}
+
+		try {
+			cached.setClassIndex( 0 );
+			fail( "setClassIndex modified the cached instances" );
+		}
+		catch ( UnsupportedOperationException e ) {
+		}
+
+		cached.setClassIndex( cached.classIndex() );
+
+		Instances copy = new Instances( cached );
+		copy.randomize( new Random( 1 ) );
+		copy.delete( 0 );
+
+		assertEquals( 149, copy.numInstances() );
+		assertEquals( 150, cache.get( inputFile ).numInstances() );
+		assertEquals( firstLabel, cache.get( inputFile ).instance( 0 ).stringValue( cached.classIndex() ) );
+	}
+
+	@Test
+	public void leastRecentlyUsedEntryIsEvicted() throws Exception {
+		DatasetCache cache = new DatasetCache( 2, Long.MAX_VALUE );
+
+		File a = copyIris( "a.arff" ), b = copyIris( "b.arff" ), c = copyIris( "c.arff" );
+
+		Instances first = cache.get( a );
+		cache.get( b );
+		cache.get( a );
+		cache.get( c );
+
+		assertEquals( 2, cache.size() );
+		assertEquals( 1, cache.getEvictions() );
+		assertSame( first, cache.get( a ) );
+		assertEquals( 3, cache.getMisses() );
+
+		cache.get( b );
+		assertEquals( 4, cache.getMisses() );
+	}
+
+	private File copyIris( String name ) throws Exception {
+		File ret = new File( temporaryFolder.getRoot(), name );
+		Files.copy( ClassifierBuilderTest.getIrisFile().toPath(), ret.toPath(), StandardCopyOption.REPLACE_EXISTING );
+		return ret;
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.lang.invoke.MethodHandles;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ArffSaver;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IConfidenceMatrix;
+import com.tolstoy.aiaiai.api.IEvaluationResult;
+import com.tolstoy.aiaiai.api.IEvaluator;
+import com.tolstoy.aiaiai.api.IKeyedInstanceSet;
+
+public class EvaluatorTest {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private static final int NUM_COPIES_OF_IRIS = 400;
+	private static final int NUM_PASSES = 10;
+
+	//	deliberately loose so a busy build machine does not fail the check, but a serialized evaluator does
+	private static final double MIN_SPEEDUP = 1.25;
+
+	//	wall-clock speedup depends on the machine running the build, so it is only asserted under the large-tests profile
+	private static final boolean ASSERT_SPEEDUP = Boolean.getBoolean( "assertSpeedup" );
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void parallelChunksMatchSequentialEvaluation() throws Exception {
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+		File columnarFile = temporaryFolder.newFile( "iris.col" );
+
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+		factory.convertToColumnar( inputFile, columnarFile );
+
+		IClassifierBuilder builder = factory.createConcurrentClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																				ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, inputFile );
+
+		IConfidenceMatrix expected = factory.evaluate( builder, inputFile );
+
+		IEvaluator evaluator = factory.createEvaluator( builder, 7 );
+		ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+		try {
+			for ( IKeyedInstanceSet set : Arrays.asList( factory.createColumnarKeyedInstanceSet( inputFile ),
+														factory.createMappedKeyedInstanceSet( columnarFile ),
+														new KeyedInstanceSet<String,Double>( inputFile ) ) ) {
+				IEvaluationResult result = evaluator.evaluate( set, executor );
+
+				assertEquals( expected.getMatrix(), result.getMatrix().getMatrix() );
+				assertEquals( expected.getClassCounts(), result.getMatrix().getClassCounts() );
+				assertEquals( 150, result.getNumRows() );
+				assertEquals( 22, result.getNumChunks() );
+				assertTrue( result.toString(), result.getNumModelCopies() >= 1 && result.getNumModelCopies() <= 4 );
+				assertTrue( result.toString(), result.getRowsPerSecond() > 0 );
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void rowsWithUnknownClassesAreSkipped() throws Exception {
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		IClassifierBuilder builder = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																		ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, ClassifierBuilderTest.getIrisFile() );
+
+		ColumnarKeyedInstanceSet set = new ColumnarKeyedInstanceSet( ClassifierBuilderTest.getIrisFile() );
+		set.getKeyedInstance( 0 ).setExpectedClass( null );
+		set.getKeyedInstance( 1 ).setExpectedClass( null );
+
+		IEvaluationResult result = factory.createEvaluator( builder, 1000 ).evaluate( set );
+
+		assertEquals( 148, result.getNumRows() );
+		assertEquals( 1, result.getNumChunks() );
+		assertEquals( 1, result.getNumModelCopies() );
+		assertEquals( Integer.valueOf( 48 ), result.getMatrix().getClassCounts().get( "Iris-setosa" ) );
+	}
+
+	@Test
+	public void copiesArePooledAcrossEvaluations() throws Exception {
+		File inputFile = ClassifierBuilderTest.getIrisFile();
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		IClassifierBuilder builder = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																		ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, inputFile );
+
+		//	every copy builds a new ClassifierBuilder, which records one builder.create
+		factory.getMetrics().setEnabled( true );
+
+		IEvaluator evaluator = factory.createEvaluator( builder, 50 );
+		KeyedInstanceSet<String,Double> set = new KeyedInstanceSet<String,Double>( inputFile );
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+
+		try {
+			evaluator.evaluate( set, executor );
+			evaluator.evaluate( set, executor );
+			assertEquals( 1, factory.getMetrics().getHistograms().get( "builder.create" ).getCount() );
+
+			KeyedInstanceSet<String,Double> badSet = new KeyedInstanceSet<String,Double>( inputFile );
+			badSet.getKeyedInstances().get( 0 ).setValue( "noSuchAttribute", 1.0 );
+
+			try {
+				evaluator.evaluate( badSet, executor );
+				fail( "expected the unknown attribute to fail the first chunk" );
+			}
+			catch ( ExecutionException e ) {
+			}
+
+			//	the copy that failed the first chunk was dropped, so the next chunk made a new one
+			assertEquals( 2, factory.getMetrics().getHistograms().get( "builder.create" ).getCount() );
+
+			IEvaluationResult result = evaluator.evaluate( set, executor );
+			assertEquals( 150, result.getNumRows() );
+			assertEquals( 1, result.getNumModelCopies() );
+			assertEquals( 2, factory.getMetrics().getHistograms().get( "builder.create" ).getCount() );
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void throughputScalesWithThreads() throws Exception {
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		Instances iris = factory.readInstances( ClassifierBuilderTest.getIrisFile() );
+		Instances repeated = new Instances( iris, iris.numInstances() * NUM_COPIES_OF_IRIS );
+		for ( int copy = 0; copy < NUM_COPIES_OF_IRIS; copy++ ) {
+			for ( int row = 0; row < iris.numInstances(); row++ ) {
+				repeated.add( (Instance) iris.instance( row ).copy() );
+			}
+		}
+
+		File inputFile = temporaryFolder.newFile( "repeated.arff" );
+		ArffSaver saver = new ArffSaver();
+		saver.setInstances( repeated );
+		saver.setFile( inputFile );
+		saver.writeBatch();
+
+		IClassifierBuilder builder = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																		ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, inputFile );
+		IKeyedInstanceSet set = factory.createColumnarKeyedInstanceSet( inputFile );
+		IEvaluator evaluator = factory.createEvaluator( builder, 250 );
+
+		int numProcessors = Runtime.getRuntime().availableProcessors();
+		int maxThreads = Math.max( 2, Math.min( 8, numProcessors ) );
+
+		IConfidenceMatrix expected = factory.evaluate( builder, inputFile );
+		ExecutorService warmup = Executors.newFixedThreadPool( maxThreads );
+		try {
+			for ( int pass = 0; pass < NUM_PASSES; pass++ ) {
+				evaluator.evaluate( set, warmup );
+			}
+		}
+		finally {
+			warmup.shutdown();
+		}
+
+		double singleThreadRate = 0;
+		double bestSpeedup = 1;
+
+		for ( int numThreads = 1; numThreads <= maxThreads; numThreads *= 2 ) {
+			ExecutorService executor = Executors.newFixedThreadPool( numThreads );
+			double rate = 0;
+
+			try {
+				//	the best of several passes, so one slow pass does not decide the result
+				for ( int pass = 0; pass < NUM_PASSES; pass++ ) {
+					IEvaluationResult result = evaluator.evaluate( set, executor );
+
+					assertEquals( expected.getMatrix(), result.getMatrix().getMatrix() );
+					rate = Math.max( rate, result.getRowsPerSecond() );
+				}
+			}
+			finally {
+				executor.shutdown();
+			}
+
+			if ( numThreads == 1 ) {
+				singleThreadRate = rate;
+			}
+			else if ( numThreads <= numProcessors ) {
+				bestSpeedup = Math.max( bestSpeedup, rate / singleThreadRate );
+			}
+
+			logger.info( numThreads + " threads: " + Math.round( rate ) + " rows/sec, speedup=" + String.format( "%.2f", rate / singleThreadRate ) );
+		}
+
+		//	with one core there is nothing to scale onto, so only the matrices are checked
+		if ( ASSERT_SPEEDUP && numProcessors >= 2 ) {
+			assertTrue( "speedup " + String.format( "%.2f", bestSpeedup ) + " on " + numProcessors + " cores", bestSpeedup >= MIN_SPEEDUP );
+		}
+	}
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.lang.invoke.MethodHandles;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IColumnarKeyedInstanceSet;
+import com.tolstoy.aiaiai.api.IPrimitiveClassifierParams;
+
+public class MappedKeyedInstanceSetTest {
+	private static final Logger logger = LogManager.getLogger( MethodHandles.lookup().lookupClass() );
+
+	private static final String CHILD_HEAP = "-Xmx24m";
+	private static final int NUM_ATTRIBUTES = 4;
+	//	small by default so a normal build stays fast; the large-tests profile raises it to 3M rows, about 108MB
+	private static final int NUM_ROWS = Integer.getInteger( "mappedKeyedInstanceSet.rows", 20000 );
+	private static final Pattern RESULT = Pattern.compile( "rows=(\\d+) correct=(\\d+) maxHeap=(\\d+)" );
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void matchesColumnarKeyedInstanceSet() throws Exception {
+		File columnarFile = temporaryFolder.newFile( "iris.col" );
+
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+		factory.convertToColumnar( ClassifierBuilderTest.getIrisFile(), columnarFile );
+
+		ColumnarKeyedInstanceSet expected = new ColumnarKeyedInstanceSet( ClassifierBuilderTest.getIrisFile() );
+		IColumnarKeyedInstanceSet<String> actual = factory.createMappedKeyedInstanceSet( columnarFile );
+
+		assertEquals( expected.getNumRows(), actual.getNumRows() );
+		assertEquals( expected.getAttributeNames(), actual.getAttributeNames() );
+		assertEquals( expected.getClassLabels(), actual.getClassLabels() );
+
+		for ( int attribute = 0; attribute < expected.getAttributeNames().size(); attribute++ ) {
+			double[] expectedColumn = new double[ 50 ];
+			double[] actualColumn = new double[ 50 ];
+
+			expected.copyColumn( attribute, 75, expectedColumn, 0, 50 );
+			actual.copyColumn( attribute, 75, actualColumn, 0, 50 );
+
+			assertArrayEquals( expectedColumn, actualColumn, 0 );
+		}
+
+		int[] expectedOrdinals = new int[ expected.getNumRows() ];
+		int[] actualOrdinals = new int[ actual.getNumRows() ];
+		expected.copyClassOrdinals( 0, expectedOrdinals, 0, expectedOrdinals.length );
+		actual.copyClassOrdinals( 0, actualOrdinals, 0, actualOrdinals.length );
+		assertArrayEquals( expectedOrdinals, actualOrdinals );
+
+		for ( int row = 0; row < expected.getNumRows(); row++ ) {
+			assertEquals( expected.getExpectedClass( row ), actual.getKeyedInstances().get( row ).getExpectedClass() );
+
+			for ( String key : expected.getAttributeNames() ) {
+				assertEquals( expected.getKeyedInstance( row ).getValue( key ), actual.getKeyedInstance( row ).getValue( key ) );
+			}
+		}
+	}
+
+	@Test( expected = UnsupportedOperationException.class )
+	public void viewsAreReadOnly() throws Exception {
+		File columnarFile = temporaryFolder.newFile( "iris.col" );
+
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+		factory.convertToColumnar( ClassifierBuilderTest.getIrisFile(), columnarFile );
+
+		factory.createMappedKeyedInstanceSet( columnarFile ).getKeyedInstance( 0 ).setValue( "sepallength", 1.0 );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void rejectsTextFiles() throws Exception {
+		new MappedKeyedInstanceSet( ClassifierBuilderTest.getIrisFile() );
+	}
+
+	/*
+	 * Writes a columnar file, then evaluates every row of it in a child JVM with a small heap. With the
+	 * large-tests profile the file is several times larger than that heap, so the child could never hold
+	 * the dataset on it.
+	 */
+	@Test
+	public void evaluatesDatasetLargerThanHeap() throws Exception {
+		File columnarFile = temporaryFolder.newFile( "large.col" );
+		File modelFile = temporaryFolder.newFile( "large.model" );
+
+		Instances structure = createStructure();
+		Random random = new Random( 1 );
+
+		try ( ColumnarDatasetStore.ColumnWriter writer = new ColumnarDatasetStore.ColumnWriter( structure, NUM_ROWS, columnarFile ) ) {
+			for ( int row = 0; row < NUM_ROWS; row++ ) {
+				writer.write( row, createInstance( random ) );
+			}
+		}
+
+		Instances training = new Instances( structure, 2000 );
+		for ( int row = 0; row < 2000; row++ ) {
+			training.add( createInstance( random ) );
+		}
+
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+		factory.saveClassifierBuilder( factory.trainClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS, null, null, training ), modelFile );
+
+		ProcessBuilder processBuilder = new ProcessBuilder( Paths.get( System.getProperty( "java.home" ), "bin", "java" ).toString(), CHILD_HEAP,
+															"-cp", System.getProperty( "java.class.path" ),
+															MappedKeyedInstanceSetTest.class.getName(), modelFile.getAbsolutePath(), columnarFile.getAbsolutePath() );
+		processBuilder.redirectErrorStream( true );
+
+		Process process = processBuilder.start();
+		String output = new String( process.getInputStream().readAllBytes(), StandardCharsets.UTF_8 );
+
+		assertTrue( "child did not finish", process.waitFor( 5, TimeUnit.MINUTES ) );
+		assertEquals( output, 0, process.exitValue() );
+
+		Matcher matcher = RESULT.matcher( output );
+		assertTrue( output, matcher.find() );
+		assertEquals( NUM_ROWS, Integer.parseInt( matcher.group( 1 ) ) );
+		assertTrue( output, Integer.parseInt( matcher.group( 2 ) ) > NUM_ROWS * 0.95 );
+
+		if ( NUM_ROWS >= 3000000 ) {
+			assertTrue( output, columnarFile.length() > 4 * Long.parseLong( matcher.group( 3 ) ) );
+		}
+	}
+
+	//	run in the child JVM: evaluate a mapped dataset and log the counts, which the console appender writes to stdout
+	public static void main( String[] args ) throws Exception {
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		IClassifierBuilder<Double> builder = factory.loadClassifierBuilder( new File( args[ 0 ] ) );
+		IColumnarKeyedInstanceSet<String> set = factory.createMappedKeyedInstanceSet( new File( args[ 1 ] ) );
+
+		IPrimitiveClassifierParams params = builder.createPrimitiveClassifierParams();
+		int[] indexes = new int[ set.getAttributeNames().size() ];
+		for ( int i = 0; i < indexes.length; i++ ) {
+			indexes[ i ] = params.getIndex( set.getAttributeNames().get( i ) );
+		}
+
+		List<String> labels = set.getClassLabels();
+		int numCorrect = 0;
+
+		for ( int row = 0; row < set.getNumRows(); row++ ) {
+			for ( int i = 0; i < indexes.length; i++ ) {
+				params.setValue( indexes[ i ], set.getValue( row, i ) );
+			}
+
+			if ( labels.get( set.getClassOrdinal( row ) ).equals( builder.classify( params ) ) ) {
+				numCorrect++;
+			}
+		}
+
+		logger.info( "rows=" + set.getNumRows() + " correct=" + numCorrect + " maxHeap=" + Runtime.getRuntime().maxMemory() );
+	}
+
+	private static Instances createStructure() {
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+		for ( int i = 0; i < NUM_ATTRIBUTES; i++ ) {
+			attributes.add( new Attribute( "x" + i ) );
+		}
+		attributes.add( new Attribute( "class", Arrays.asList( "low", "high" ) ) );
+
+		Instances ret = new Instances( "large", attributes, 0 );
+		ret.setClassIndex( NUM_ATTRIBUTES );
+
+		return ret;
+	}
+
+	//	the class is high when the first two attributes add up to more than 1
+	private static DenseInstance createInstance( Random random ) {
+		double[] values = new double[ NUM_ATTRIBUTES + 1 ];
+		for ( int i = 0; i < NUM_ATTRIBUTES; i++ ) {
+			values[ i ] = random.nextDouble();
+		}
+		values[ NUM_ATTRIBUTES ] = values[ 0 ] + values[ 1 ] > 1 ? 1 : 0;
+
+		return new DenseInstance( 1.0, values );
+	}
+}
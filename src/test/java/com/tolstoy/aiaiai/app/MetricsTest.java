@@ -0,0 +1,259 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import weka.classifiers.rules.ZeroR;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ArffSaver;
+import weka.filters.AllFilter;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Reorder;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierParams;
+import com.tolstoy.aiaiai.api.IHistogramSnapshot;
+import com.tolstoy.aiaiai.api.IMetrics;
+import com.tolstoy.aiaiai.api.AttributeNotSetException;
+
+public class MetricsTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void bucketsBoundEveryValueWithinThreePercent() {
+		Random random = new Random( 1 );
+
+		for ( int i = 0; i < 100000; i++ ) {
+			long value = i < 1000 ? i : random.nextLong() & LatencyHistogram.MAX_VALUE;
+			int bucket = LatencyHistogram.getBucket( value );
+
+			long lower = LatencyHistogram.getBucketLowerBound( bucket );
+			long upper = LatencyHistogram.getBucketUpperBound( bucket );
+
+			assertTrue( value + " in [" + lower + "," + upper + "]", lower <= value && value <= upper );
+			assertTrue( value + " bucket too wide", upper - lower <= Math.max( 0, lower / 32 ) );
+		}
+
+		assertEquals( LatencyHistogram.NUM_BUCKETS - 1, LatencyHistogram.getBucket( LatencyHistogram.MAX_VALUE ) );
+	}
+
+	@Test
+	public void percentilesAreWithinBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for ( long value = 1; value <= 100000; value++ ) {
+			histogram.record( value * 1000 );
+		}
+
+		IHistogramSnapshot snapshot = histogram.snapshot();
+
+		assertEquals( 100000, snapshot.getCount() );
+		assertEquals( 50000500.0, snapshot.getMeanNanos(), 0.001 );
+		assertEquals( 100000000, snapshot.getMaxNanos() );
+		assertEquals( 50000000, snapshot.getPercentileNanos( 50 ), 50000000 / 32 );
+		assertEquals( 99000000, snapshot.getPercentileNanos( 99 ), 99000000 / 32 );
+		assertEquals( 100000000, snapshot.getPercentileNanos( 100 ) );
+	}
+
+	@Test
+	public void stripesAreMergedInSnapshots() throws Exception {
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		Thread[] threads = new Thread[ 8 ];
+		for ( int t = 0; t < threads.length; t++ ) {
+			final long offset = t;
+			threads[ t ] = new Thread( () -> {
+				for ( long value = 1; value <= 10000; value++ ) {
+					histogram.record( value + offset );
+				}
+			} );
+			threads[ t ].start();
+		}
+
+		for ( Thread thread : threads ) {
+			thread.join();
+		}
+
+		IHistogramSnapshot snapshot = histogram.snapshot();
+
+		assertEquals( 80000, snapshot.getCount() );
+		assertEquals( 10007, snapshot.getMaxNanos() );
+		assertEquals( 5004.0, snapshot.getMeanNanos(), 0.001 );
+
+		histogram.reset();
+		assertEquals( 0, histogram.snapshot().getCount() );
+	}
+
+	@Test
+	public void factoryRecordsStagesAndCounters() throws Exception {
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+		factory.getMetrics().setEnabled( true );
+
+		IClassifierBuilder<Double> builder = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																				ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS, ClassifierBuilderTest.getIrisFile() );
+
+		Instances instances = factory.readInstances( ClassifierBuilderTest.getIrisFile() );
+		ClassifierBuilderTest.classifyAll( builder, instances );
+
+		try {
+			builder.classify( builder.createClassifierParams() );
+		}
+		catch ( AttributeNotSetException e ) {
+		}
+
+		IClassifierParams params = builder.createClassifierParams();
+		for ( int i = 0; i < instances.numAttributes() - 1; i++ ) {
+			params.setValue( instances.attribute( i ).name(), i == 0 ? "not a number" : "1.5" );
+		}
+		builder.classify( params );
+
+		IMetrics metrics = factory.getMetrics();
+		Map<String,IHistogramSnapshot> histograms = metrics.getHistograms();
+
+		assertEquals( 1, histograms.get( "train.read" ).getCount() );
+		assertEquals( 1, histograms.get( "train.filter" ).getCount() );
+		assertEquals( 1, histograms.get( "train.build" ).getCount() );
+		assertEquals( 1, histograms.get( "builder.create" ).getCount() );
+		assertEquals( 151, histograms.get( "classify.total" ).getCount() );
+		assertEquals( 151, histograms.get( "classify.model" ).getCount() );
+		assertEquals( 151, histograms.get( "classify.filter" ).getCount() );
+		assertTrue( histograms.get( "classify.total" ).getMeanNanos() >= histograms.get( "classify.model" ).getMeanNanos() );
+
+		Map<String,Long> counters = metrics.getCounters();
+		assertEquals( Long.valueOf( 151 ), counters.get( "classify.rows" ) );
+		assertEquals( Long.valueOf( 1 ), counters.get( "attributeNotSet" ) );
+		assertEquals( Long.valueOf( 1 ), counters.get( "valueParseFailures" ) );
+
+		metrics.setEnabled( false );
+		ClassifierBuilderTest.classifyAll( builder, instances );
+		assertEquals( 151, metrics.getHistograms().get( "classify.total" ).getCount() );
+
+		metrics.reset();
+		assertEquals( 0, metrics.getHistograms().get( "classify.total" ).getCount() );
+	}
+
+	@Test
+	public void callsRunningWhenEnabledAreNotRecorded() throws Exception {
+		Metrics metrics = new Metrics( false );
+		Instances instances = new Instances( new ClassifierBuilderFactory().readInstances( ClassifierBuilderTest.getIrisFile() ) );
+		instances.setClassIndex( instances.numAttributes() - 1 );
+
+		//	turns metrics on while the classify call that reaches it is still running
+		ZeroR classifier = new ZeroR() {
+			@Override
+			public double classifyInstance( Instance instance ) {
+				metrics.setEnabled( true );
+				return super.classifyInstance( instance );
+			}
+		};
+		classifier.buildClassifier( instances );
+
+		AllFilter filter = new AllFilter();
+		filter.setInputFormat( instances );
+
+		IClassifierBuilder<Double> builder = new ClassifierBuilder<Double>( classifier, filter, instances, metrics );
+
+		Instances one = new Instances( instances, 0 );
+		one.add( instances.instance( 0 ) );
+		ClassifierBuilderTest.classifyAll( builder, one );
+
+		Map<String,IHistogramSnapshot> histograms = metrics.getHistograms();
+		assertTrue( metrics.isEnabled() );
+		assertEquals( 0, histograms.get( "classify.total" ).getCount() );
+		assertEquals( 0, histograms.get( "classify.model" ).getCount() );
+
+		ClassifierBuilderTest.classifyAll( builder, one );
+
+		IHistogramSnapshot total = metrics.getHistograms().get( "classify.total" );
+		assertEquals( 1, total.getCount() );
+		assertTrue( total.toString(), total.getMaxNanos() < 10000000000L );
+	}
+
+	@Test
+	public void classFirstIsNotCountedAsAParseFailure() throws Exception {
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+		factory.getMetrics().setEnabled( true );
+
+		Reorder reorder = new Reorder();
+		reorder.setAttributeIndices( "last,first-4" );
+		reorder.setInputFormat( factory.readInstances( ClassifierBuilderTest.getIrisFile() ) );
+		Instances classFirst = Filter.useFilter( factory.readInstances( ClassifierBuilderTest.getIrisFile() ), reorder );
+
+		File inputFile = temporaryFolder.newFile( "classFirst.arff" );
+		ArffSaver saver = new ArffSaver();
+		saver.setInstances( classFirst );
+		saver.setFile( inputFile );
+		saver.writeBatch();
+
+		IClassifierBuilder<Double> builder = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, null, null, null, inputFile );
+
+		IClassifierParams<Double> params = builder.createClassifierParams();
+		for ( int i = 1; i < classFirst.numAttributes(); i++ ) {
+			params.setValue( classFirst.attribute( i ).name(), classFirst.instance( 0 ).value( i ) );
+		}
+
+		assertEquals( "Iris-setosa", builder.classify( params ) );
+		assertEquals( Long.valueOf( 0 ), factory.getMetrics().getCounters().get( "valueParseFailures" ) );
+	}
+
+	@Test
+	public void exportersPublishFlattenedMetrics() throws Exception {
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+		factory.getMetrics().setEnabled( true );
+
+		IClassifierBuilder<Double> builder = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, null, null, null, ClassifierBuilderTest.getIrisFile() );
+		ClassifierBuilderTest.classifyAll( builder, factory.readInstances( ClassifierBuilderTest.getIrisFile() ) );
+
+		InMemoryMetricsExporter inMemory = new InMemoryMetricsExporter();
+		inMemory.register( factory.getMetrics() );
+
+		Map<String,Double> scraped = inMemory.scrape();
+		assertEquals( 150.0, scraped.get( "classify.total.count" ), 0 );
+		assertTrue( scraped.get( "classify.total.p99Micros" ) >= scraped.get( "classify.total.p50Micros" ) );
+
+		inMemory.unregister();
+		assertTrue( inMemory.scrape().isEmpty() );
+
+		JmxMetricsExporter jmx = new JmxMetricsExporter( "com.tolstoy.aiaiai:type=Metrics,name=MetricsTest" );
+		jmx.register( factory.getMetrics() );
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = jmx.getObjectName();
+
+		try {
+			assertEquals( 150.0, (Double) server.getAttribute( objectName, "classify.rows" ), 0 );
+			assertEquals( 150.0, (Double) server.getAttribute( objectName, "classify.total.count" ), 0 );
+		}
+		finally {
+			jmx.unregister();
+		}
+
+		assertFalse( server.isRegistered( objectName ) );
+	}
+}
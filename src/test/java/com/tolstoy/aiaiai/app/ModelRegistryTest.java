@@ -0,0 +1,164 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierParams;
+import com.tolstoy.aiaiai.api.IModelRegistry;
+import com.tolstoy.aiaiai.api.IModelStats;
+
+public class ModelRegistryTest {
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void coldModelsAreEvictedAndReloadedLazily() throws Exception {
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+		File j48 = saveModel( factory, "j48.model", ClassifierBuilderTest.CLASSIFIER_NAME );
+
+		//	the charge is measured per load, so take it from a second load, after class loading is out of the way
+		IModelRegistry probe = factory.createModelRegistry( Long.MAX_VALUE, 2 );
+		probe.register( "first", j48 );
+		probe.register( "second", j48 );
+		probe.getClassifierBuilder( "first" );
+		probe.getClassifierBuilder( "second" );
+		long charge = probe.getModelStats( "second" ).getEstimatedBytes();
+
+		assertTrue( "charge " + charge + " for a " + j48.length() + " byte model", charge >= 3 * j48.length() );
+
+		IModelRegistry registry = factory.createModelRegistry( charge * 5 / 2, 2 );
+		for ( String name : new String[] { "a", "b", "c" } ) {
+			registry.register( name, j48 );
+		}
+
+		Instances instances = factory.readInstances( ClassifierBuilderTest.getIrisFile() );
+		IClassifierParams<Double> params = createParams( registry.getClassifierBuilder( "a" ), instances.instance( 0 ) );
+
+		assertEquals( "Iris-setosa", registry.classify( "a", params ) );
+		assertEquals( "Iris-setosa", registry.classify( "b", params ) );
+		assertEquals( "Iris-setosa", registry.classify( "c", params ) );
+
+		IModelStats a = registry.getModelStats( "a" );
+		assertFalse( a.isLoaded() );
+		assertEquals( 1, a.getNumEvictions() );
+		assertTrue( registry.getModelStats( "c" ).isLoaded() );
+		assertTrue( registry.getMemoryUsed() <= registry.getMemoryBudget() );
+
+		assertEquals( "Iris-setosa", registry.classify( "a", params ) );
+		assertEquals( 2, a.getNumLoads() );
+		assertEquals( 2, a.getNumRequests() );
+		assertFalse( registry.getModelStats( "b" ).isLoaded() );
+	}
+
+	@Test
+	public void swapDoesNotInterruptClassification() throws Exception {
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+		File j48 = saveModel( factory, "j48.model", ClassifierBuilderTest.CLASSIFIER_NAME );
+		File naiveBayes = saveModel( factory, "nb.model", "weka.classifiers.bayes.NaiveBayes" );
+
+		IModelRegistry registry = factory.createModelRegistry( Long.MAX_VALUE, 2 );
+		registry.register( "segment", j48 );
+
+		Instances instances = factory.readInstances( ClassifierBuilderTest.getIrisFile() );
+		List<IClassifierParams> paramsList = new ArrayList<IClassifierParams>();
+		for ( Instance instance : instances ) {
+			paramsList.add( createParams( registry.getClassifierBuilder( "segment" ), instance ) );
+		}
+
+		AtomicBoolean done = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool( 4 );
+
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for ( int t = 0; t < 4; t++ ) {
+			futures.add( executor.submit( () -> {
+				int count = 0;
+				while ( !done.get() ) {
+					for ( IClassifierParams params : paramsList ) {
+						registry.classify( "segment", params );
+						count++;
+					}
+				}
+
+				return count;
+			} ) );
+		}
+
+		for ( int i = 0; i < 6; i++ ) {
+			registry.swap( "segment", i % 2 == 0 ? naiveBayes : j48 );
+		}
+
+		done.set( true );
+
+		long total = 0;
+		for ( Future<Integer> future : futures ) {
+			total += future.get();
+		}
+
+		executor.shutdown();
+
+		IModelStats stats = registry.getModelStats( "segment" );
+		assertEquals( 0, stats.getNumErrors() );
+		assertEquals( total, stats.getNumRequests() );
+		assertEquals( 7, stats.getNumLoads() );
+		assertTrue( stats.getMeanLatencyMicros() > 0 );
+		assertEquals( total, stats.getLatency().getCount() );
+		assertTrue( stats.getLatency().getPercentileNanos( 99 ) >= stats.getLatency().getPercentileNanos( 50 ) );
+		assertTrue( ( (ConcurrentClassifierBuilder) registry.getClassifierBuilder( "segment" ) ).getNumCopies() <= 2 );
+
+		assertEquals( ClassifierBuilderTest.classifyAll( factory.loadClassifierBuilder( j48 ), instances ),
+						ClassifierBuilderTest.classifyAll( registry.getClassifierBuilder( "segment" ), instances ) );
+	}
+
+	@Test( expected = IllegalArgumentException.class )
+	public void unknownModelIsRejected() throws Exception {
+		new ClassifierBuilderFactory().createModelRegistry( 1000 ).classify( "missing", null );
+	}
+
+	private File saveModel( ClassifierBuilderFactory factory, String fileName, String classifierName ) throws Exception {
+		File ret = temporaryFolder.newFile( fileName );
+
+		factory.saveClassifierBuilder( factory.createClassifierBuilder( classifierName, null, ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS,
+																		ClassifierBuilderTest.getIrisFile() ), ret );
+
+		return ret;
+	}
+
+	private static IClassifierParams<Double> createParams( IClassifierBuilder<Double> builder, Instance instance ) {
+		IClassifierParams<Double> ret = builder.createClassifierParams();
+		for ( int i = 0; i < instance.numAttributes() - 1; i++ ) {
+			ret.setValue( instance.attribute( i ).name(), instance.value( i ) );
+		}
+
+		return ret;
+	}
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierParams;
+import com.tolstoy.aiaiai.api.IScoringServer;
+
+public class ScoringServerTest {
+	private ClassifierBuilderFactory factory;
+	private IClassifierBuilder<Double> builder;
+	private IScoringServer server;
+	private HttpClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		factory = new ClassifierBuilderFactory();
+		factory.getMetrics().setEnabled( true );
+		builder = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+													ClassifierBuilderTest.FILTER_NAME, ClassifierBuilderTest.FILTER_ARGUMENTS,
+													ClassifierBuilderTest.getIrisFile() );
+
+		server = factory.createScoringServer( builder, 0, 32, 5000 );
+		server.start();
+
+		client = HttpClient.newHttpClient();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void concurrentRequestsAreBatchedAndMatchClassify() throws Exception {
+		Instances rawInstances = factory.readInstances( ClassifierBuilderTest.getIrisFile() );
+
+		List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+
+		for ( Instance instance : rawInstances ) {
+			StringBuilder body = new StringBuilder();
+			for ( int i = 0; i < rawInstances.numAttributes() - 1; i++ ) {
+				body.append( i > 0 ? "&" : "" ).append( rawInstances.attribute( i ).name() ).append( '=' ).append( instance.value( i ) );
+			}
+
+			responses.add( client.sendAsync( post( body.toString() ), HttpResponse.BodyHandlers.ofString() ) );
+		}
+
+		List<String> actual = new ArrayList<String>();
+		for ( CompletableFuture<HttpResponse<String>> response : responses ) {
+			assertEquals( 200, response.get().statusCode() );
+			actual.add( response.get().body() );
+		}
+
+		assertEquals( ClassifierBuilderTest.classifyAll( builder, rawInstances ), actual );
+		assertEquals( rawInstances.numInstances(), server.getNumRequests() );
+		assertTrue( "batches: " + server.getNumBatches(), server.getNumBatches() < server.getNumRequests() );
+		assertEquals( (Long) server.getNumBatches(), factory.getMetrics().getCounters().get( "server.batches" ) );
+	}
+
+	@Test
+	public void serverCanBeRestarted() throws Exception {
+		String body = "sepallength=5.1&sepalwidth=3.5&petallength=1.4&petalwidth=0.2";
+
+		assertEquals( "Iris-setosa", client.send( post( body ), HttpResponse.BodyHandlers.ofString() ).body() );
+
+		server.stop();
+		server.start();
+
+		assertEquals( "Iris-setosa", client.send( post( body ), HttpResponse.BodyHandlers.ofString() ).body() );
+	}
+
+	@Test
+	public void cancelledRequestsAreNotClassified() throws Exception {
+		CountDownLatch blocked = new CountDownLatch( 1 );
+		CountDownLatch release = new CountDownLatch( 1 );
+		AtomicInteger numClassified = new AtomicInteger();
+
+		//	holds the first batch so the later requests wait in the queue while some are cancelled
+		IClassifierBuilder<Double> blocking = (IClassifierBuilder<Double>) Proxy.newProxyInstance( getClass().getClassLoader(), new Class<?>[] { IClassifierBuilder.class }, ( proxy, method, args ) -> {
+			if ( method.getName().equals( "classifyBatch" ) ) {
+				blocked.countDown();
+				release.await();
+				numClassified.addAndGet( ( (List<?>) args[ 0 ] ).size() );
+			}
+
+			try {
+				return method.invoke( builder, args );
+			}
+			catch ( InvocationTargetException e ) {
+				throw e.getCause();
+			}
+		} );
+
+		MicroBatcher<Double> batcher = new MicroBatcher<Double>( blocking, 32, 0, 64, (Metrics) factory.getMetrics() );
+		batcher.start();
+
+		IClassifierParams<Double> params = builder.createClassifierParams();
+		params.setValue( "sepallength", 5.1 );
+		params.setValue( "sepalwidth", 3.5 );
+		params.setValue( "petallength", 1.4 );
+		params.setValue( "petalwidth", 0.2 );
+
+		CompletableFuture<String> first = batcher.submit( params );
+		blocked.await();
+
+		List<CompletableFuture<String>> futures = new ArrayList<CompletableFuture<String>>();
+		for ( int i = 0; i < 10; i++ ) {
+			futures.add( batcher.submit( params ) );
+		}
+
+		for ( int i = 0; i < 9; i++ ) {
+			futures.get( i ).cancel( false );
+		}
+
+		release.countDown();
+
+		assertEquals( "Iris-setosa", first.get() );
+		assertEquals( "Iris-setosa", futures.get( 9 ).get() );
+
+		batcher.stop();
+
+		assertEquals( 9, batcher.getNumCancelled() );
+		assertEquals( 2, numClassified.get() );
+
+		batcher.start();
+		assertEquals( "Iris-setosa", batcher.submit( params ).get() );
+		batcher.stop();
+
+		assertTrue( batcher.submit( params ).isCompletedExceptionally() );
+	}
+
+	@Test
+	public void saturatedServerAnswersServiceUnavailable() throws Exception {
+		CountDownLatch blocked = new CountDownLatch( 1 );
+		CountDownLatch release = new CountDownLatch( 1 );
+
+		//	holds the first batch, so the only request thread stays busy
+		IClassifierBuilder<Double> blocking = (IClassifierBuilder<Double>) Proxy.newProxyInstance( getClass().getClassLoader(), new Class<?>[] { IClassifierBuilder.class }, ( proxy, method, args ) -> {
+			if ( method.getName().equals( "classifyBatch" ) ) {
+				blocked.countDown();
+				release.await();
+			}
+
+			try {
+				return method.invoke( builder, args );
+			}
+			catch ( InvocationTargetException e ) {
+				throw e.getCause();
+			}
+		} );
+
+		server.stop();
+		server = new ScoringServer( blocking, InetAddress.getLoopbackAddress(), 0, 32, 0, 1, 1, (Metrics) factory.getMetrics() );
+		server.start();
+
+		String body = "sepallength=5.1&sepalwidth=3.5&petallength=1.4&petalwidth=0.2";
+
+		CompletableFuture<HttpResponse<String>> first = client.sendAsync( post( body ), HttpResponse.BodyHandlers.ofString() );
+		assertTrue( blocked.await( 10, TimeUnit.SECONDS ) );
+
+		//	one of these waits in the pool's queue, and the other finds the queue full
+		List<CompletableFuture<HttpResponse<String>>> later = new ArrayList<CompletableFuture<HttpResponse<String>>>();
+		later.add( client.sendAsync( post( body ), HttpResponse.BodyHandlers.ofString() ) );
+		later.add( client.sendAsync( post( body ), HttpResponse.BodyHandlers.ofString() ) );
+
+		long deadline = System.currentTimeMillis() + 10000;
+		while ( server.getNumRejected() < 1 && System.currentTimeMillis() < deadline ) {
+			Thread.sleep( 10 );
+		}
+
+		release.countDown();
+
+		assertEquals( 200, first.get().statusCode() );
+
+		List<Integer> statuses = new ArrayList<Integer>();
+		for ( CompletableFuture<HttpResponse<String>> response : later ) {
+			statuses.add( response.get().statusCode() );
+		}
+
+		assertTrue( statuses.toString(), statuses.contains( 200 ) && statuses.contains( 503 ) );
+		assertEquals( 1, server.getNumRejected() );
+	}
+
+	@Test
+	public void badRequestsGetClientErrors() throws Exception {
+		assertEquals( 400, client.send( post( "sepallength=5.1" ), HttpResponse.BodyHandlers.ofString() ).statusCode() );
+		assertEquals( 400, client.send( post( "sepallength=abc" ), HttpResponse.BodyHandlers.ofString() ).statusCode() );
+		assertEquals( 400, client.send( post( "nosuchattribute=1.0" ), HttpResponse.BodyHandlers.ofString() ).statusCode() );
+
+		HttpResponse<String> health = client.send( HttpRequest.newBuilder( uri( "/health" ) ).build(), HttpResponse.BodyHandlers.ofString() );
+		assertEquals( 200, health.statusCode() );
+		assertEquals( "ok", health.body() );
+
+		HttpResponse<String> metrics = client.send( HttpRequest.newBuilder( uri( "/metrics" ) ).build(), HttpResponse.BodyHandlers.ofString() );
+		assertTrue( metrics.body(), metrics.body().contains( "server.request.count 3.0" ) );
+	}
+
+	private HttpRequest post( String body ) {
+		return HttpRequest.newBuilder( uri( "/classify" ) )
+					.header( "Content-Type", "application/x-www-form-urlencoded" )
+					.POST( HttpRequest.BodyPublishers.ofString( body ) )
+					.build();
+	}
+
+	private URI uri( String path ) {
+		return URI.create( "http://localhost:" + server.getPort() + path );
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2024 Chris Kelly
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.tolstoy.aiaiai.app;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+import com.tolstoy.aiaiai.api.IClassifierBuilder;
+import com.tolstoy.aiaiai.api.IClassifierParams;
+import com.tolstoy.aiaiai.api.IKeyedInstance;
+import com.tolstoy.aiaiai.api.ISparseClassifierParams;
+
+public class SparseClassifierParamsTest {
+	private static final int NUM_ATTRIBUTES = 5000;
+	private static final int NUM_ROWS = 300;
+	private static final int NUM_NON_ZERO = 8;
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void sparseParamsMatchDenseParams() throws Exception {
+		for ( String filterName : new String[] { ClassifierBuilderTest.FILTER_NAME, null } ) {
+			ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+			IClassifierBuilder<Double> builder = factory.createClassifierBuilder( ClassifierBuilderTest.CLASSIFIER_NAME, ClassifierBuilderTest.CLASSIFIER_ARGUMENTS,
+																					filterName, null, ClassifierBuilderTest.getIrisFile() );
+
+			Instances rawInstances = factory.readInstances( ClassifierBuilderTest.getIrisFile() );
+
+			List<IClassifierParams<Double>> paramsList = new ArrayList<IClassifierParams<Double>>();
+			List<String> actual = new ArrayList<String>();
+
+			for ( Instance instance : rawInstances ) {
+				ISparseClassifierParams params = builder.createSparseClassifierParams();
+
+				//	set in reverse, with a value that is then overwritten, to exercise the sort and last-write-wins
+				params.setValue( 0, 99.0 );
+				for ( int i = rawInstances.numAttributes() - 2; i >= 0; i-- ) {
+					params.setValue( i, instance.value( i ) );
+				}
+
+				paramsList.add( params );
+				actual.add( builder.classify( params ) );
+			}
+
+			List<String> expected = ClassifierBuilderTest.classifyAll( builder, rawInstances );
+
+			assertEquals( expected, actual );
+			assertEquals( expected, builder.classifyBatch( paramsList ) );
+		}
+	}
+
+	@Test
+	public void wideSparseDataStaysSparse() throws Exception {
+		File inputFile = writeSparseArff( temporaryFolder.newFile( "wide.arff" ) );
+
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		IClassifierBuilder<Double> builder = factory.createClassifierBuilder( "weka.classifiers.bayes.NaiveBayesMultinomial", null, null, null, inputFile );
+
+		Instances rawInstances = factory.readInstances( inputFile );
+		assertTrue( rawInstances.instance( 0 ) instanceof SparseInstance );
+
+		List<IKeyedInstance<String,Double>> keyedInstances = factory.createKeyedInstanceSet( inputFile ).getKeyedInstances();
+
+		int numCorrect = 0;
+		ISparseClassifierParams params = builder.createSparseClassifierParams();
+
+		for ( IKeyedInstance<String,Double> keyedInstance : keyedInstances ) {
+			assertTrue( keyedInstance.getKeys().size() <= NUM_NON_ZERO );
+
+			params.clear();
+			for ( String key : keyedInstance.getKeys() ) {
+				params.setValue( key, keyedInstance.getValue( key ) );
+			}
+
+			assertEquals( keyedInstance.getKeys().size(), params.getNumNonZero() );
+
+			if ( keyedInstance.getExpectedClass().equals( builder.classify( params ) ) ) {
+				numCorrect++;
+			}
+		}
+
+		assertTrue( "correct: " + numCorrect, numCorrect > NUM_ROWS * 0.9 );
+	}
+
+	@Test
+	public void sparseKeyedInstancesUpdateModels() throws Exception {
+		File inputFile = writeSparseArff( temporaryFolder.newFile( "wide.arff" ) );
+
+		ClassifierBuilderFactory factory = new ClassifierBuilderFactory();
+
+		IClassifierBuilder<Double> builder = factory.createClassifierBuilder( "weka.classifiers.bayes.NaiveBayesMultinomialUpdateable", null, null, null, inputFile );
+
+		List<IKeyedInstance<String,Double>> keyedInstances = factory.createKeyedInstanceSet( inputFile ).getKeyedInstances();
+
+		builder.updateBatch( keyedInstances.subList( 0, 10 ) );
+
+		assertEquals( 1, builder.getModelVersion() );
+	}
+
+	//	two classes, each drawing its non-zero attributes from its own half of the schema
+	private static File writeSparseArff( File file ) throws Exception {
+		Random random = new Random( 1 );
+
+		try ( PrintWriter out = new PrintWriter( file ) ) {
+			out.println( "@relation wide" );
+			for ( int i = 0; i < NUM_ATTRIBUTES; i++ ) {
+				out.println( "@attribute f" + i + " numeric" );
+			}
+			out.println( "@attribute class {a,b}" );
+			out.println( "@data" );
+
+			for ( int row = 0; row < NUM_ROWS; row++ ) {
+				boolean isA = row % 2 == 0;
+				int offset = isA ? 0 : NUM_ATTRIBUTES / 2;
+
+				List<Integer> indexes = new ArrayList<Integer>();
+				while ( indexes.size() < NUM_NON_ZERO ) {
+					int index = offset + random.nextInt( 50 );
+					if ( !indexes.contains( index ) ) {
+						indexes.add( index );
+					}
+				}
+				indexes.sort( null );
+
+				StringBuilder sb = new StringBuilder( "{" );
+				for ( int index : indexes ) {
+					sb.append( index ).append( ' ' ).append( 1 + random.nextInt( 3 ) ).append( ',' );
+				}
+				sb.append( NUM_ATTRIBUTES ).append( isA ? " a}" : " b}" );
+
+				out.println( sb );
+			}
+		}
+
+		return file;
+	}
+}